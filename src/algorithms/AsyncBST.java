@@ -0,0 +1,185 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+import main.BSTInterface;
+
+/**
+ * A non-blocking facade over a BSTInterface, for callers that must never wait on a monitor
+ * (e.g., event-loop threads). Operations are queued and return a CompletableFuture right away.
+ * A small pool of worker threads drains the queues in micro-batches: each batch is sorted by key
+ * before it is applied, so successive operations traverse mostly the same upper part of the tree.
+ *
+ * Every key is always handled by the same worker, so operations on one key submitted by one thread
+ * are applied in submission order. Futures are completed on the worker threads, so dependent
+ * actions should use the async variants of CompletableFuture's methods if they may block.
+ */
+public class AsyncBST implements Closeable {
+
+    private static final int OP_CONTAINS = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_REMOVE = 2;
+    // How long an idle worker parks before checking its queue again, in case a wakeup was missed
+    private static final long IDLE_PARK_NANOS = 1000000;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_LINGER_NANOS = 50000;
+
+    private static final class Request {
+        final int op;
+        final int key;
+        final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+
+        Request(int op, int key) {
+            this.op = op;
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<Request> BY_KEY = new Comparator<Request>() {
+        public int compare(Request a, Request b) {
+            return Integer.compare(a.key, b.key);
+        }
+    };
+
+    private final class Worker extends Thread {
+        // Lock-free queue; many producers, and this worker is the only consumer
+        final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<Request>();
+        volatile boolean idle = false;
+        private final Request[] batch = new Request[batchSize];
+
+        Worker(int id) {
+            super("AsyncBST-worker-" + id);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int n = 0;
+                long deadline = 0;
+                // Fill the batch, waiting at most lingerNanos after its first request was taken
+                while (n < batchSize) {
+                    final Request r = queue.poll();
+                    if (r != null) {
+                        if (n == 0) {
+                            deadline = System.nanoTime() + lingerNanos;
+                        }
+                        batch[n++] = r;
+                    } else if (n > 0 && System.nanoTime() >= deadline) {
+                        break;
+                    } else if (n == 0 && closed) {
+                        return;
+                    } else {
+                        idle = true;
+                        if (queue.isEmpty()) {
+                            LockSupport.parkNanos(n > 0 ? Math.max(0, deadline - System.nanoTime()) : IDLE_PARK_NANOS);
+                        }
+                        idle = false;
+                    }
+                }
+                apply(batch, n);
+            }
+        }
+
+        void apply(Request[] batch, int n) {
+            // TimSort is stable, so requests for the same key keep their order
+            Arrays.sort(batch, 0, n, BY_KEY);
+            for (int i = 0; i < n; i++) {
+                final Request r = batch[i];
+                batch[i] = null;
+                try {
+                    final boolean result;
+                    if (r.op == OP_INSERT) {
+                        result = tree.insert(r.key);
+                    } else if (r.op == OP_REMOVE) {
+                        result = tree.remove(r.key);
+                    } else {
+                        result = tree.contains(r.key);
+                    }
+                    r.future.complete(result);
+                } catch (Throwable t) {
+                    r.future.completeExceptionally(t);
+                }
+            }
+        }
+    }
+
+    private final BSTInterface tree;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Worker[] workers;
+    private volatile boolean closed = false;
+
+    /**
+     * @param tree - The tree the operations are applied to.
+     * @param nworkers - The number of worker threads.
+     * @param batchSize - The largest number of operations a worker applies in one batch.
+     * @param lingerNanos - How long a worker waits for more operations before applying a partial batch.
+     */
+    public AsyncBST(BSTInterface tree, int nworkers, int batchSize, long lingerNanos) {
+        if (nworkers < 1) throw new IllegalArgumentException("nworkers must be > 0");
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be > 0");
+        if (lingerNanos < 0) throw new IllegalArgumentException("lingerNanos must be >= 0");
+        this.tree = tree;
+        this.batchSize = batchSize;
+        this.lingerNanos = lingerNanos;
+        this.workers = new Worker[nworkers];
+        for (int i = 0; i < nworkers; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+    }
+
+    private CompletableFuture<Boolean> submit(final int op, final int key) {
+        if (closed) {
+            throw new RejectedExecutionException("AsyncBST is closed");
+        }
+        final Request r = new Request(op, key);
+        // Keys are spread over the workers by a multiplicative hash
+        final Worker w = workers[(int) (((key * 0x9E3779B9L) & 0xffffffffL) * workers.length >>> 32)];
+        w.queue.offer(r);
+        if (w.idle) {
+            LockSupport.unpark(w);
+        }
+        if (closed && w.queue.remove(r)) {
+            // close() raced with this call, and the worker may already have exited
+            r.future.completeExceptionally(new RejectedExecutionException("AsyncBST is closed"));
+        }
+        return r.future;
+    }
+
+    public final CompletableFuture<Boolean> contains(final int key) {
+        return submit(OP_CONTAINS, key);
+    }
+
+    public final CompletableFuture<Boolean> insert(final int key) {
+        return submit(OP_INSERT, key);
+    }
+
+    public final CompletableFuture<Boolean> remove(final int key) {
+        return submit(OP_REMOVE, key);
+    }
+
+    /**
+     * Stop accepting operations, and wait until the workers have applied all queued ones.
+     */
+    public void close() {
+        closed = true;
+        for (Worker w : workers) {
+            LockSupport.unpark(w);
+        }
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package algorithms;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+import main.BSTInterface;
+
+/**
+ * A concurrent B-link tree (Lehman and Yao) with fat nodes of many sorted int keys.
+ * Every node has a high key - an exclusive upper bound on the keys below it - and a link to its right sibling,
+ * so a thread that reaches a node which was split under it simply moves right.
+ *
+ * Reads use optimistic lock coupling: a node is read without locking, and the read is validated
+ * against the node's version (the stamp of its StampedLock) before its result is used. Only the nodes
+ * that are modified are write-locked, one at a time. Nodes are never merged or freed, so a traversal
+ * that fails a validation retries from the same node instead of from the root.
+ */
+public class BLinkTree implements BSTInterface {
+
+    /**
+     * A node of the tree. Its fields are plain - readers validate them against the lock's stamp.
+     * Leaves (level 0) hold keys[0, count). Inner nodes hold count separators and count + 1 children,
+     * where children[i] holds the keys in [keys[i - 1], keys[i]).
+     */
+    static final class Node {
+        final StampedLock lock = new StampedLock();
+        final int level;
+        final int[] keys;
+        final Node[] children;
+        int count;
+        // Exclusive upper bound on the keys of this node; Long.MAX_VALUE for the rightmost node of a level
+        long highKey = Long.MAX_VALUE;
+        Node right;
+
+        Node(int level, int capacity) {
+            this.level = level;
+            this.keys = new int[capacity];
+            this.children = level == 0 ? null : new Node[capacity + 1];
+        }
+
+        /**
+         * @return the index of the first key that is greater than the given key.
+         * The count is clamped, since an optimistic reader may see a torn node.
+         */
+        int upperBound(int key) {
+            int lo = 0;
+            int hi = Math.min(count, keys.length);
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (keys[mid] <= key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * @return whether a leaf holds the given key, and its index is upperBound(key) - 1.
+         */
+        boolean holds(int key, int upperBound) {
+            return upperBound > 0 && keys[upperBound - 1] == key;
+        }
+    }
+
+    public static final int DEFAULT_FANOUT = 32;
+
+    private final int fanout;
+    private volatile Node root;
+
+    public BLinkTree() {
+        this(DEFAULT_FANOUT);
+    }
+
+    /**
+     * @param fanout - The number of keys per node. 16 keys fill one 64-byte cache line.
+     */
+    public BLinkTree(int fanout) {
+        if (fanout < 3) throw new IllegalArgumentException("fanout must be > 2");
+        this.fanout = fanout;
+        this.root = new Node(0, fanout);
+    }
+
+    /**
+     * Wait until the node is not write-locked, and return a stamp to validate an optimistic read with.
+     */
+    private static long readStamp(Node node) {
+        long stamp;
+        while ((stamp = node.lock.tryOptimisticRead()) == 0) {
+            Thread.yield();
+        }
+        return stamp;
+    }
+
+    /**
+     * Descend optimistically from the root to the node at the given level whose range should hold the key.
+     * @param path - If not null, the node visited at every level above the target is stored at path[level].
+     */
+    private Node descend(final int key, final int level, final Node[] path) {
+        Node node = root;
+        while (true) {
+            final long stamp = readStamp(node);
+            final Node next;
+            if (key >= node.highKey) {
+                next = node.right;
+            } else if (node.level == level) {
+                if (node.lock.validate(stamp)) {
+                    return node;
+                }
+                continue;
+            } else {
+                next = node.children[node.upperBound(key)];
+            }
+            if (!node.lock.validate(stamp)) {
+                continue;
+            }
+            if (path != null && next.level != node.level && node.level < path.length) {
+                path[node.level] = node;
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Write-lock the node whose range holds the key, starting at the given node and moving right.
+     * @return the locked node; the caller holds its write lock.
+     */
+    private static Node lockCovering(Node node, final int key) {
+        while (true) {
+            node.lock.writeLock();
+            if (key < node.highKey) {
+                return node;
+            }
+            final Node next = node.right;
+            node.lock.tryUnlockWrite();
+            node = next;
+        }
+    }
+
+    public final boolean contains(final int key) {
+        Node node = root;
+        while (true) {
+            final long stamp = readStamp(node);
+            if (key >= node.highKey) {
+                final Node next = node.right;
+                if (node.lock.validate(stamp)) {
+                    node = next;
+                }
+            } else if (node.level == 0) {
+                final boolean found = node.holds(key, node.upperBound(key));
+                if (node.lock.validate(stamp)) {
+                    return found;
+                }
+            } else {
+                final Node next = node.children[node.upperBound(key)];
+                if (node.lock.validate(stamp)) {
+                    node = next;
+                }
+            }
+        }
+    }
+
+    public final boolean insert(final int key) {
+        final Node[] path = new Node[root.level + 1];
+        final Node leaf = lockCovering(descend(key, 0, path), key);
+        final int index = leaf.upperBound(key);
+        if (leaf.holds(key, index)) {
+            leaf.lock.tryUnlockWrite();
+            return false;
+        }
+        if (leaf.count < fanout) {
+            insertAt(leaf, index, key, null);
+            leaf.lock.tryUnlockWrite();
+            return true;
+        }
+
+        // Split the leaf, and insert the key into the half that covers it
+        final Node sibling = new Node(0, fanout);
+        final int mid = fanout / 2;
+        System.arraycopy(leaf.keys, mid, sibling.keys, 0, fanout - mid);
+        sibling.count = fanout - mid;
+        leaf.count = mid;
+        if (index <= mid) {
+            insertAt(leaf, index, key, null);
+        } else {
+            insertAt(sibling, index - mid, key, null);
+        }
+        link(leaf, sibling, sibling.keys[0]);
+        insertSeparator(leaf, sibling.keys[0], sibling, path);
+        return true;
+    }
+
+    /**
+     * Insert a key (and, in an inner node, the child to its right) into a locked node that has room for it.
+     */
+    private static void insertAt(Node node, int index, int key, Node child) {
+        System.arraycopy(node.keys, index, node.keys, index + 1, node.count - index);
+        node.keys[index] = key;
+        if (child != null) {
+            System.arraycopy(node.children, index + 1, node.children, index + 2, node.count - index);
+            node.children[index + 1] = child;
+        }
+        node.count++;
+    }
+
+    /**
+     * Make sibling the right neighbour of a node that was just split at separator.
+     * The sibling becomes reachable only when the node's lock is released.
+     */
+    private static void link(Node node, Node sibling, int separator) {
+        sibling.highKey = node.highKey;
+        sibling.right = node.right;
+        node.highKey = separator;
+        node.right = sibling;
+    }
+
+    /**
+     * Add the separator of a split to the level above, splitting parents as needed.
+     * Until this is done, searches reach the sibling through the right link of the split node.
+     * @param node - The node that was split. Its lock is held, and released by this function.
+     * @param separator - The smallest key of the sibling.
+     * @param sibling - The new right neighbour of node.
+     * @param path - The nodes visited when descending, by level; may be shorter than the current height.
+     */
+    private void insertSeparator(Node node, int separator, Node sibling, Node[] path) {
+        while (true) {
+            if (node == root) {
+                // The root is only split while it is locked, so no other node of its level is reachable yet
+                final Node newRoot = new Node(node.level + 1, fanout);
+                newRoot.keys[0] = separator;
+                newRoot.children[0] = node;
+                newRoot.children[1] = sibling;
+                newRoot.count = 1;
+                root = newRoot;
+                node.lock.tryUnlockWrite();
+                return;
+            }
+            final int level = node.level + 1;
+            node.lock.tryUnlockWrite();
+            final Node start = level < path.length && path[level] != null ? path[level] : descend(separator, level, null);
+            final Node parent = lockCovering(start, separator);
+            final int index = parent.upperBound(separator);
+            if (parent.count < fanout) {
+                insertAt(parent, index, separator, sibling);
+                parent.lock.tryUnlockWrite();
+                return;
+            }
+
+            // Split the parent: the middle separator moves up, and the children to its right move to the new node
+            final Node parentSibling = new Node(level, fanout);
+            final int mid = fanout / 2;
+            final int up = parent.keys[mid];
+            System.arraycopy(parent.keys, mid + 1, parentSibling.keys, 0, fanout - mid - 1);
+            System.arraycopy(parent.children, mid + 1, parentSibling.children, 0, fanout - mid);
+            parentSibling.count = fanout - mid - 1;
+            parent.count = mid;
+            for (int i = mid + 1; i <= fanout; i++) {
+                parent.children[i] = null;
+            }
+            if (index <= mid) {
+                insertAt(parent, index, separator, sibling);
+            } else {
+                insertAt(parentSibling, index - mid - 1, separator, sibling);
+            }
+            link(parent, parentSibling, up);
+            node = parent;
+            separator = up;
+            sibling = parentSibling;
+        }
+    }
+
+    public final boolean remove(final int key) {
+        // Nodes are never merged - an empty leaf stays in place, and still routes its range
+        final Node leaf = lockCovering(descend(key, 0, null), key);
+        final int index = leaf.upperBound(key);
+        if (!leaf.holds(key, index)) {
+            leaf.lock.tryUnlockWrite();
+            return false;
+        }
+        System.arraycopy(leaf.keys, index, leaf.keys, index - 1, leaf.count - index);
+        leaf.count--;
+        leaf.lock.tryUnlockWrite();
+        return true;
+    }
+
+    /**
+     * Apply the consumer to every key in the tree, in ascending order, by walking the leaf level through the right links.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    final void forEachKey(IntConsumer consumer) {
+        Node node = root;
+        while (node.level > 0) {
+            node = node.children[0];
+        }
+        for (; node != null; node = node.right) {
+            for (int i = 0; i < node.count; i++) {
+                consumer.accept(node.keys[i]);
+            }
+        }
+    }
+
+    /**
+     * The number of levels in the tree.
+     */
+    public final int getHeight() {
+        return root.level + 1;
+    }
+
+    public String getName() {
+        return "BLinkTree";
+    }
+
+    // Returns the size of the tree.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        final int[] size = new int[1];
+        forEachKey(key -> size[0]++);
+        return size[0];
+    }
+
+    // Returns the sum of keys in the tree.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        final long[] sum = new long[1];
+        forEachKey(key -> sum[0] += key);
+        return sum[0];
+    }
+}
@@ -1,5 +1,20 @@
 package algorithms;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.OptionalInt;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 import main.BSTInterface;
 
 public class BST implements BSTInterface {
@@ -14,6 +29,10 @@ public class BST implements BSTInterface {
         public volatile Node left;
         public volatile Node right;
         public volatile boolean marked; // marked for deletion
+        public volatile boolean deleted; // logically deleted, but still in the tree as a routing node (see lazy())
+        public volatile Claim pending; // the multi-key operation that owns the node, if any (see atomically())
+        public volatile boolean pendingLive; // whether the node holds its key once `pending` commits
+        public volatile boolean referenced; // CLOCK bit, only used by BoundedBST
     
         public Node(int key) {
             this(key, null, null);
@@ -52,6 +71,80 @@ public class BST implements BSTInterface {
         }
     }
 
+    /**
+     * A node of an augmented tree, which also holds aggregates over its subtree.
+     * The aggregates are only written while the node's lock is held.
+     */
+    static final class AugNode extends Node {
+        public volatile int count; // number of keys in the subtree
+        public volatile long sum;  // sum of keys in the subtree
+
+        public AugNode(int key) {
+            super(key);
+            this.count = 1;
+            this.sum = key;
+        }
+    }
+
+    /**
+     * A node of a versioned tree, which also keeps the states that open snapshots may still need (see versioned()).
+     * The children and the membership of the node are versioned separately, since a multi-key operation changes
+     * the membership of its nodes while other updates may still change their children.
+     */
+    static final class VersionedNode extends Node {
+        public volatile Version links;    // earlier children, newest first
+        public volatile Version liveness; // earlier membership, newest first
+
+        public VersionedNode(int key) {
+            super(key);
+        }
+    }
+
+    /**
+     * The time of an update of a versioned tree, shared by the versions of all the nodes that it changes.
+     * It is unresolved while the update runs, and is then set once, from the clock.
+     */
+    static final class Stamp {
+        static final long UNRESOLVED = Long.MAX_VALUE;
+        private static final AtomicLongFieldUpdater<Stamp> TIME = AtomicLongFieldUpdater.newUpdater(Stamp.class, "time");
+        volatile long time = UNRESOLVED;
+
+        void resolve(long now) {
+            TIME.compareAndSet(this, UNRESOLVED, now);
+        }
+    }
+
+    /**
+     * A state of a versioned node, before the update `until` changed it: its children in a `links` version,
+     * or its membership in a `liveness` version.
+     */
+    static final class Version {
+        final Node left;
+        final Node right;
+        final boolean live;
+        final Stamp until;
+        volatile Version prev; // the state before this one, while a snapshot may still need it
+
+        Version(Node left, Node right, boolean live, Stamp until, Version prev) {
+            this.left = left;
+            this.right = right;
+            this.live = live;
+            this.until = until;
+            this.prev = prev;
+        }
+    }
+
+    /**
+     * The descriptor of a multi-key operation. Its nodes keep their old membership while it is pending,
+     * and all of them switch to their new membership at once, when it commits.
+     */
+    static final class Claim {
+        static final int PENDING = 0;
+        static final int COMMITTED = 1;
+        static final int ABORTED = 2;
+        volatile int status = PENDING;
+    }
+
     /**
      * A helper class used for finding nodes in the tree.
      */
@@ -77,14 +170,106 @@ public class BST implements BSTInterface {
      * A helper dummy node (set to null) used to represent a "no child".
      */
     final Node sentinel;
+    /**
+     * Whether the nodes hold subtree aggregates (see augmented()).
+     */
+    private final boolean augmented;
+    /**
+     * Whether nodes with two children are only deleted logically (see lazy()).
+     */
+    private final boolean lazy;
+    /**
+     * Whether the tree supports snapshots (see versioned()).
+     */
+    private final boolean versioned;
+    /**
+     * The clock of a versioned tree: updates that resolve their stamp at time t are in the snapshots taken at t or later.
+     */
+    private final AtomicLong clock;
+    /**
+     * The number of running updates of a versioned tree, striped by thread.
+     */
+    private final AtomicLongArray writers;
+    /**
+     * Whether updates keep the states they replace, because a snapshot is open.
+     */
+    private volatile boolean versioning;
+    /**
+     * The times of the open snapshots, with the number of snapshots open at each time.
+     * Guarded by itself; `oldestSnapshot` is its first key, or Long.MAX_VALUE if it is empty.
+     */
+    private final TreeMap<Long, Integer> snapshots;
+    private volatile long oldestSnapshot = Long.MAX_VALUE;
+    /**
+     * The number of successors moved up by removes so far (see placeLeaf()).
+     */
+    private final AtomicInteger moves = new AtomicInteger();
+
+    private static final int STRIPES = 64;
+    private static final int PAD = 16; // longs per cache-line pair
 
     public BST() {
-        head = new Node(Integer.MIN_VALUE);
+        this(false, false, false);
+    }
+
+    private BST(boolean augmented, boolean lazy, boolean versioned) {
+        this.augmented = augmented;
+        this.lazy = lazy;
+        this.versioned = versioned;
+        this.clock = versioned ? new AtomicLong() : null;
+        this.writers = versioned ? new AtomicLongArray(STRIPES * PAD) : null;
+        this.snapshots = versioned ? new TreeMap<Long, Integer>() : null;
+        head = versioned ? new VersionedNode(Integer.MIN_VALUE) : new Node(Integer.MIN_VALUE);
         sentinel = null;
         head.left = sentinel;
         head.right = sentinel;
     }
 
+    /**
+     * Create a tree whose nodes also hold the number and the sum of the keys in their subtree,
+     * so rank(), select(), rangeCount() and rangeSum() take time proportional to the depth of the tree.
+     * After every update, the aggregates are recomputed bottom-up along the path from the changed nodes to the root.
+     */
+    public static BST augmented() {
+        return new BST(true, false, false);
+    }
+
+    /**
+     * Create a tree that never relocates a successor: removing a node with two children only sets its `deleted` flag,
+     * and the node stays in the tree as a routing node until it has fewer than two children. Re-inserting its key clears
+     * the flag. Removes lock at most two nodes, and since nodes never move, a search needs a single traversal.
+     * A deleted node is unlinked by the remove that takes away one of its children, right after that remove.
+     * The price is the memory and the search depth of the deleted nodes that are still routing.
+     */
+    public static BST lazy() {
+        return new BST(false, true, false);
+    }
+
+    /**
+     * Create a tree with both the subtree aggregates of augmented() and the logical deletion of lazy().
+     * Deleted nodes are not counted in the aggregates.
+     */
+    public static BST lazyAugmented() {
+        return new BST(true, true, false);
+    }
+
+    /**
+     * Create a tree that supports snapshot(): an O(1) consistent view of the tree, which can be read
+     * while updates go on. Updates pay for versions only while a snapshot is open, and only for the nodes they change:
+     * before changing a node, an update saves its old children or membership in a version record on the node,
+     * stamped with the update's time, and a snapshot reads each node's state as of its own time.
+     * With no snapshot open, updates change nodes in place, like in a plain tree, and only count themselves
+     * in a per-thread counter, so the first snapshot can wait for them to finish.
+     * Versioned trees are neither augmented nor lazy.
+     */
+    public static BST versioned() {
+        return new BST(false, false, true);
+    }
+
+    private Node newNode(int key) {
+        return augmented ? new AugNode(key) : versioned ? new VersionedNode(key) : new Node(key, sentinel, sentinel);
+    }
+
     private static boolean isSentinelNode(Node node) {
         return node == null;
     }
@@ -97,6 +282,152 @@ public class BST implements BSTInterface {
         return isSentinelNode(node.left) && isSentinelNode(node.right);
     }
 
+    private static boolean isBinary(Node node) {
+        return isRealNode(node.left) && isRealNode(node.right);
+    }
+
+    /**
+     * Whether the node holds a key of the set: it is neither removed nor logically deleted,
+     * taking into account a multi-key operation that committed but has not updated the node yet.
+     */
+    private static boolean isLive(Node node) {
+        if (node.marked) {
+            return false;
+        }
+        final Claim claim = node.pending;
+        if (claim != null && claim.status == Claim.COMMITTED) {
+            return node.pendingLive;
+        }
+        return !node.deleted;
+    }
+
+    /**
+     * Wait until a multi-key operation has released the node. The caller must not hold any lock.
+     */
+    private static void awaitRelease(Node node, Claim claim) {
+        for (int spins = 0; node.pending == claim; spins++) {
+            if ((spins & 0xff) == 0xff) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static int stripe() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+    }
+
+    /**
+     * Start an update of a versioned tree. Every update calls this before its first change and endUpdate() after
+     * its last one; an update that changes the tree in several steps (like atomically()) may start several.
+     * @return the stamp of the update's versions, or null if no snapshot is open, so the update changes nodes in place.
+     */
+    private Stamp beginUpdate() {
+        if (!versioned) {
+            return null;
+        }
+        writers.incrementAndGet(stripe());
+        return versioning ? new Stamp() : null;
+    }
+
+    private void endUpdate(Stamp stamp) {
+        if (!versioned) {
+            return;
+        }
+        if (stamp != null) {
+            stamp.resolve(clock.get());
+        }
+        writers.decrementAndGet(stripe());
+    }
+
+    /**
+     * Save the children of the node, before the update changes them for the first time.
+     * Must be called while holding the node's lock.
+     */
+    private void saveLinks(Node node, Stamp stamp) {
+        if (!versioned) {
+            return;
+        }
+        final VersionedNode v = (VersionedNode) node;
+        final Version head = v.links;
+        if (stamp == null) {
+            // No snapshot is open, and the versions of the last one are not needed anymore
+            if (head != null) {
+                v.links = null;
+            }
+        } else if (head == null || head.until != stamp) {
+            v.links = new Version(node.left, node.right, false, stamp, retain(head));
+        }
+    }
+
+    /**
+     * Save the membership of the node, before the update changes it for the first time (see saveLinks()).
+     */
+    private void saveLiveness(Node node, Stamp stamp) {
+        if (!versioned) {
+            return;
+        }
+        final VersionedNode v = (VersionedNode) node;
+        final Version head = v.liveness;
+        if (stamp == null) {
+            if (head != null) {
+                v.liveness = null;
+            }
+        } else if (head == null || head.until != stamp) {
+            v.liveness = new Version(null, null, isLive(node), stamp, retain(head));
+        }
+    }
+
+    /**
+     * Before an update of a versioned tree reads the children of a node, wait until the update that last changed them
+     * has resolved its stamp. Otherwise an update could resolve before an update whose changes it depends on, and a
+     * snapshot between them would hold the later update without the earlier one (e.g., a key inserted below a node
+     * that the snapshot does not see in its new place). The awaited update saved its versions after taking all
+     * its locks, so it does not wait for any lock anymore, and finishes soon.
+     * @param stamp - The stamp of the waiting update, whose own versions it must not wait for, or null.
+     */
+    private void awaitLinks(Node node, Stamp stamp) {
+        if (!versioned || !versioning) {
+            return;
+        }
+        final Version newest = ((VersionedNode) node).links;
+        if (newest == null || newest.until == stamp) {
+            return;
+        }
+        for (int spins = 0; newest.until.time == Stamp.UNRESOLVED; spins++) {
+            if ((spins & 0xff) == 0xff) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Prepare the newest version of a node to be followed by a newer one, and drop the versions that no snapshot needs.
+     * The update that saved it released the node, so it has made all its changes and its stamp can be resolved;
+     * this keeps the times of a node's versions in order, even if that update has not called endUpdate() yet.
+     * A snapshot at time s needs the newest version older than it, if any; that is, the versions
+     * whose stamps are later than s, and only the oldest of them. So every version stamped
+     * at or before the oldest open snapshot (or the next snapshot, if none is open) can be dropped.
+     * @return the version, or null if no snapshot needs it.
+     */
+    private Version retain(Version newest) {
+        if (newest == null) {
+            return null;
+        }
+        newest.until.resolve(clock.get());
+        // Read the clock before the oldest snapshot, which a new snapshot updates before it advances the clock
+        final long bound = Math.min(clock.get(), oldestSnapshot);
+        if (newest.until.time <= bound) {
+            return null;
+        }
+        for (Version v = newest; v.prev != null; v = v.prev) {
+            if (v.prev.until.time <= bound) {
+                v.prev = null;
+                break;
+            }
+        }
+        return newest;
+    }
+
     /**
      * Validate that the result is a valid result - the child is the correct child of the parent,
      * and none of them is marked.
@@ -109,6 +440,25 @@ public class BST implements BSTInterface {
         return !pred.marked && (isSentinelNode(curr) || !curr.marked) && pred.getChild(result.isRight) == curr;
     }
 
+    /**
+     * Check that a new leaf for the key still belongs at the empty child found by a search.
+     * validate() alone is not enough: between the search and the lock, another node may have been added at that child
+     * and then moved up by a remove as the successor of an ancestor, leaving the same empty child below its new place.
+     * If no successor moved since the search started, the child is right; otherwise search again while the parent
+     * is locked, which keeps such a move from happening during the search.
+     * The function should be called only when the lock over the parent is held, after validate().
+     * @param key - The key of the new leaf.
+     * @param result - A search result whose current is empty.
+     * @param movesBefore - The value of `moves` before the search.
+     */
+    private boolean placeLeaf(final int key, NodePair result, final int movesBefore) {
+        if (moves.get() == movesBefore) {
+            return true;
+        }
+        NodePair again = findKeyOnce(key, true);
+        return again.parent == result.parent && isSentinelNode(again.current);
+    }
+
     /**
      * A function to safely find a key in the tree.
      * This function has no false-negatives, meaning that if the node is in the tree, it certainly be found.
@@ -117,13 +467,24 @@ public class BST implements BSTInterface {
      * @param key - The key to search for.
      */
     private NodePair findKey(final int key) {
+        return findKey(key, false);
+    }
+
+    /**
+     * @param update - Whether the caller is an update, which must see only resolved changes (see awaitLinks()).
+     */
+    private NodePair findKey(final int key, final boolean update) {
+        if (lazy) {
+            // Nodes are never moved, so a single traversal cannot miss the key
+            return findKeyOnce(key, update);
+        }
         NodePair first = new NodePair(null, null, false);
         
         // If the result contains the key - then it is in the tree (might be marked though), and we can return it.
         // If we don't find the key, make sure we get the same parent for it twice - otherwise,
         // it means that we might have missed it when it is being moved (during a remove operation of another node).
         while (true) {
-            NodePair second = findKeyOnce(key);
+            NodePair second = findKeyOnce(key, update);
             if (second.parent == first.parent || isRealNode(second.current)) {
                 return second;
             }
@@ -140,11 +501,17 @@ public class BST implements BSTInterface {
      * This problem is solved in the findKey function.
      * @param key - The key to find.
      */
-    private NodePair findKeyOnce(final int key) {
+    private NodePair findKeyOnce(final int key, final boolean update) {
+        if (update) {
+            awaitLinks(head, null);
+        }
         Node parent = head;
         Node curr = head.right;
         boolean isRight = true;
         while (curr != sentinel) {
+            if (update && curr.key != key) {
+                awaitLinks(curr, null);
+            }
             if (curr.key < key) {
                 parent = curr;
                 curr = curr.right;
@@ -168,7 +535,40 @@ public class BST implements BSTInterface {
      */
     public final boolean contains(final int key) {
         NodePair result = findKey(key);
-        return isRealNode(result.current) && !result.current.marked;
+        return isRealNode(result.current) && isLive(result.current);
+    }
+
+    /**
+     * Find the node that holds the given key.
+     * @return the node, or null if the key is not in the tree.
+     */
+    final Node findNode(final int key) {
+        NodePair result = findKey(key);
+        return isRealNode(result.current) && isLive(result.current) ? result.current : null;
+    }
+
+    /**
+     * Find the node with the smallest key that is greater than or equal to the given key, in a single traversal.
+     * Concurrently with removes, a node that is being moved may be missed, so the result is only a hint.
+     * @return the node, or null if there is no such key.
+     */
+    final Node ceilingNode(final int key) {
+        Node best = null;
+        Node curr = head.right;
+        while (isRealNode(curr)) {
+            if (curr.key < key) {
+                curr = curr.right;
+            } else {
+                if (isLive(curr)) {
+                    best = curr;
+                }
+                if (curr.key == key) {
+                    break;
+                }
+                curr = curr.left;
+            }
+        }
+        return best;
     }
 
     /**
@@ -178,11 +578,34 @@ public class BST implements BSTInterface {
      * @return false if the key is already in the tree, and true otherwise.
      */
     public final boolean insert(final int key) {
+        final Node node;
+        final Stamp stamp = beginUpdate();
+        try {
+            node = insertNode(key, stamp);
+        } finally {
+            endUpdate(stamp);
+        }
+        if (node == null) {
+            return false;
+        }
+        if (augmented) {
+            updateAggregates(node);
+        }
+        return true;
+    }
+
+    /**
+     * Insert the given key into the tree.
+     * @return the new node (or the logically deleted node that was revived), or null if the key is already in the tree.
+     */
+    private Node insertNode(final int key, final Stamp stamp) {
         while (true) {
-            NodePair pair = findKey(key);
+            final int movesBefore = moves.get();
+            NodePair pair = findKey(key, true);
             Node pred = pair.parent;
             Node curr = pair.current;
             boolean isRight = pair.isRight;
+            Claim blocking = null;
             synchronized (pred) {
                 if (!validate(pair)) {
                     // It is possible for curr to become the parent of pred if it is the successor of pred's parent.
@@ -191,20 +614,37 @@ public class BST implements BSTInterface {
                 }
                 if (isSentinelNode(curr)) {
                     // Can't synchronize on null!
+                    if (!placeLeaf(key, pair, movesBefore)) {
+                        continue;
+                    }
                     // Add the new node as a leaf and return success
-                    Node node = new Node(key, sentinel, sentinel);
+                    Node node = newNode(key);
+                    saveLinks(pred, stamp);
                     pred.setChild(node, isRight);
-                    return true;
+                    return node;
                 } else {
                     // We found something!
                     synchronized (curr) {
-                        if (validate(pair)) {               
-                            // The key is already in the tree!
-                            return false;
+                        if (validate(pair)) {
+                            if (curr.pending != null) {
+                                // A multi-key operation owns the key - wait for it, without holding locks
+                                blocking = curr.pending;
+                            } else if (curr.deleted) {
+                                // A logically deleted node with this key is still routing - revive it
+                                saveLiveness(curr, stamp);
+                                curr.deleted = false;
+                                return curr;
+                            } else {
+                                // The key is already in the tree!
+                                return null;
+                            }
                         }
                     }
                 }
             }
+            if (blocking != null) {
+                awaitRelease(curr, blocking);
+            }
         }
     }
 
@@ -214,11 +654,38 @@ public class BST implements BSTInterface {
      * @return true if the key was removed, false otherwise - the key does not exist in the tree
      */
     public final boolean remove(final int key) {
+        final Node changed;
+        final Stamp stamp = beginUpdate();
+        try {
+            changed = removeNode(key, stamp);
+        } finally {
+            endUpdate(stamp);
+        }
+        if (changed == null) {
+            return false;
+        }
+        if (augmented) {
+            updateAggregates(changed);
+        }
+        if (changed.key != key && changed.deleted) {
+            // The parent of the unlinked node may be a deleted node that just lost its second child
+            unlinkDeleted(changed);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the given key from the tree.
+     * @return the lowest node whose subtree changed (the head if the root was removed), or null if the key is not in the tree.
+     *         In a lazy tree, a node with two children is returned itself, after it is logically deleted.
+     */
+    private Node removeNode(final int key, final Stamp stamp) {
         while (true) {
-            NodePair pair = findKey(key);
+            NodePair pair = findKey(key, true);
             Node pred = pair.parent;
             Node curr = pair.current;
             boolean isRight = pair.isRight;
+            Claim blocking = null;
             synchronized (pred) {
                 if (!validate(pair)) {
                     // It is possible for curr to become the parent of pred if it is the successor of pred's parent.
@@ -227,30 +694,259 @@ public class BST implements BSTInterface {
                 }
                 if (isSentinelNode(curr)) {
                     // curr is null, we didn't find the key!
-                    return false;
+                    return null;
                 }
                 synchronized (curr) {
-                    if (validate(pair)) {
+                    if (validate(pair) && curr.pending != null) {
+                        // A multi-key operation owns the key - wait for it, without holding locks
+                        blocking = curr.pending;
+                    } else if (validate(pair)) {
+                        if (curr.deleted) {
+                            // The key was already deleted logically
+                            return null;
+                        }
+                        awaitLinks(curr, stamp);
                         /**
                          * We split into cases - removing a node with two children is much harder than
                          * removing a node with only 1 child or a leaf.
                          */
-                        if (isRealNode(curr.left) && isRealNode(curr.right)) {
+                        if (lazy && isBinary(curr)) {
+                            // Its children stay put, since they can only change while curr's lock is held
+                            saveLiveness(curr, stamp);
+                            curr.deleted = true;
+                            return curr;
+                        } else if (isBinary(curr)) {
                             // Note: marking curr will happen in the function when needed
-                            removeBinaryNode(pair);
+                            return removeBinaryNode(pair, stamp);
                         } else if (isRealNode(curr.left)) {
                             // Only the left child is real - connect the parent directly to it
+                            saveLiveness(curr, stamp);
+                            saveLinks(pred, stamp);
                             curr.marked = true;
                             pred.setChild(curr.left, isRight);
                         } else {
                             // Either only right child is real or both children aren't
+                            saveLiveness(curr, stamp);
+                            saveLinks(pred, stamp);
                             curr.marked = true;
                             pred.setChild(curr.right, isRight);
                         }
-                        return true;
+                        return pred;
+                    }
+                }
+            }
+            if (blocking != null) {
+                awaitRelease(curr, blocking);
+            }
+        }
+    }
+
+    /**
+     * Unlink logically deleted nodes that no longer have two children, starting from the given node and going up,
+     * since unlinking a node may leave its deleted parent with a single child.
+     * The unlinked node's children take its place, so the aggregates of its ancestors do not change.
+     * @param node - A logically deleted node.
+     */
+    private void unlinkDeleted(Node node) {
+        while (node != head && node.deleted && !node.marked) {
+            final NodePair pair = findKeyOnce(node.key, true);
+            if (pair.current != node) {
+                return;
+            }
+            final Node pred = pair.parent;
+            synchronized (pred) {
+                if (!validate(pair)) {
+                    continue;
+                }
+                synchronized (node) {
+                    awaitLinks(node, null);
+                    if (!validate(pair) || !node.deleted || node.pending != null || isBinary(node)) {
+                        // Revived, owned by a multi-key operation, or it got a second child again
+                        return;
+                    }
+                    final Stamp stamp = beginUpdate();
+                    try {
+                        saveLiveness(node, stamp);
+                        saveLinks(pred, stamp);
+                        node.marked = true;
+                        pred.setChild(isRealNode(node.left) ? node.left : node.right, pair.isRight);
+                    } finally {
+                        endUpdate(stamp);
+                    }
+                }
+            }
+            node = pred;
+        }
+    }
+
+    /**
+     * Decides the new membership of the keys of a multi-key operation from their current membership.
+     */
+    private interface MultiKeyUpdate {
+        /**
+         * @param live - Whether each key is in the tree; to be updated in place to whether it should be.
+         * @return false to leave the tree unchanged.
+         */
+        boolean apply(boolean[] live);
+    }
+
+    /**
+     * Atomically remove `from` and insert `to`, if `from` is in the tree and `to` is not.
+     * No thread sees both keys in the tree, or neither of them, because of the move.
+     * @return whether the key was moved.
+     */
+    public final boolean move(final int from, final int to) {
+        if (from == to) throw new IllegalArgumentException("cannot move a key to itself");
+        final int f = from < to ? 0 : 1;
+        return atomically(new int[] { Math.min(from, to), Math.max(from, to) }, live -> {
+            if (!live[f] || live[1 - f]) {
+                return false;
+            }
+            live[f] = false;
+            live[1 - f] = true;
+            return true;
+        });
+    }
+
+    /**
+     * Atomically exchange the membership of two keys.
+     * @return whether exactly one of the keys was in the tree, so the tree changed.
+     */
+    public final boolean swap(final int a, final int b) {
+        if (a == b) {
+            return false;
+        }
+        return atomically(new int[] { Math.min(a, b), Math.max(a, b) }, live -> {
+            if (live[0] == live[1]) {
+                return false;
+            }
+            live[0] = !live[0];
+            live[1] = !live[1];
+            return true;
+        });
+    }
+
+    /**
+     * Atomically insert all the given keys, if none of them is in the tree; otherwise, insert none of them.
+     * @return whether the keys were inserted.
+     */
+    public final boolean insertAll(final int... keys) {
+        return atomically(Arrays.stream(keys).distinct().sorted().toArray(), live -> {
+            for (boolean l : live) {
+                if (l) {
+                    return false;
+                }
+            }
+            Arrays.fill(live, true);
+            return true;
+        });
+    }
+
+    /**
+     * Perform a multi-key operation atomically. The operation claims the node of each key, in ascending key order,
+     * by setting its `pending` descriptor; an absent key gets a logically deleted placeholder node to claim.
+     * Updates of a claimed node wait until it is released, without holding any lock, so they cannot deadlock
+     * with the operation; operations cannot deadlock with each other, because they claim keys in the same order.
+     * Once every key is claimed, the membership of the keys cannot change, and the update decides their new membership.
+     * Setting the descriptor's status is the linearization point: lookups see the new membership of every node
+     * whose descriptor committed (see isLive()). Finally, each node gets its new `deleted` flag and is released.
+     * @param keys - Distinct keys, in ascending order.
+     */
+    private boolean atomically(final int[] keys, final MultiKeyUpdate update) {
+        final Claim claim = new Claim();
+        final Node[] nodes = new Node[keys.length];
+        final boolean[] before = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            final Stamp stamp = beginUpdate();
+            try {
+                nodes[i] = claimNode(keys[i], claim, stamp);
+            } finally {
+                endUpdate(stamp);
+            }
+            before[i] = !nodes[i].deleted;
+        }
+        final boolean[] after = before.clone();
+        final boolean commit = update.apply(after);
+        final Stamp stamp = beginUpdate();
+        try {
+            if (commit) {
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i].pendingLive = after[i];
+                    if (after[i] != before[i]) {
+                        // No other update changes the membership of a claimed node, so its versions are only ours
+                        synchronized (nodes[i]) {
+                            saveLiveness(nodes[i], stamp);
+                        }
+                    }
+                }
+            }
+            claim.status = commit ? Claim.COMMITTED : Claim.ABORTED;
+        } finally {
+            endUpdate(stamp);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            final Node node = nodes[i];
+            synchronized (node) {
+                if (commit) {
+                    node.deleted = !after[i];
+                }
+                node.pending = null;
+            }
+            if (augmented && commit && after[i] != before[i]) {
+                updateAggregates(node);
+            }
+            if (node.deleted) {
+                // An unused placeholder, or a removed key - unlink it unless it still routes between two children
+                unlinkDeleted(node);
+            }
+        }
+        return commit;
+    }
+
+    /**
+     * Claim the node of the given key for a multi-key operation, adding a placeholder node if the key is absent.
+     * @return the claimed node.
+     */
+    private Node claimNode(final int key, final Claim claim, final Stamp stamp) {
+        while (true) {
+            final int movesBefore = moves.get();
+            NodePair pair = findKey(key, true);
+            Node pred = pair.parent;
+            Node curr = pair.current;
+            Claim blocking = null;
+            synchronized (pred) {
+                if (!validate(pair)) {
+                    continue;
+                }
+                if (isSentinelNode(curr)) {
+                    if (!placeLeaf(key, pair, movesBefore)) {
+                        continue;
+                    }
+                    // The placeholder does not hold the key (nor count in the aggregates) unless the claim commits
+                    final Node node = newNode(key);
+                    node.deleted = true;
+                    if (augmented) {
+                        ((AugNode) node).count = 0;
+                        ((AugNode) node).sum = 0;
+                    }
+                    node.pending = claim;
+                    saveLinks(pred, stamp);
+                    pred.setChild(node, pair.isRight);
+                    return node;
+                }
+                synchronized (curr) {
+                    if (validate(pair)) {
+                        if (curr.pending == null) {
+                            curr.pending = claim;
+                            return curr;
+                        }
+                        blocking = curr.pending;
                     }
                 }
             }
+            if (blocking != null) {
+                awaitRelease(curr, blocking);
+            }
         }
     }
 
@@ -260,13 +956,16 @@ public class BST implements BSTInterface {
      * @param base - The node for which the successor is searched for.
      */
     private NodePair findSuccessor(Node base) {
+        awaitLinks(base, null);
         Node parent = base;
         Node curr = base.right;
         boolean isRight = true;
+        awaitLinks(curr, null);
         Node next = curr.left;
         while (isRealNode(next)) {
             parent = curr;
             curr = next;
+            awaitLinks(curr, null);
             next = curr.left;
             isRight = false;
         }
@@ -281,8 +980,9 @@ public class BST implements BSTInterface {
      *   
      * @param toRemove - The information regarding the node to remove.
      *                   It is assumed that both `parent` and `current`'s locks are held by this thread.
+     * @return the lowest node whose subtree changed.
      */
-    private void removeBinaryNode(NodePair toRemove) {
+    private Node removeBinaryNode(NodePair toRemove, Stamp stamp) {
         while (true) {
             NodePair pair = findSuccessor(toRemove.current);
             Node pred = pair.parent;
@@ -304,13 +1004,11 @@ public class BST implements BSTInterface {
                     if (validate(pair)) {
                         if (isSentinelNode(curr.right)) {
                             // The successor is a leaf, so we can plug it into the correct place
-                            removeAndReplaceWithLeaf(toRemove, pair);
+                            return removeAndReplaceWithLeaf(toRemove, pair, stamp);
                         } else {
                             // The successor is not a leaf - move it to be a leaf and then remove it
-                            removeWithNonLeafSucessor(toRemove, pair);
+                            return removeWithNonLeafSucessor(toRemove, pair, stamp);
                         }
-                        
-                        return;
                     }
                 }
             }
@@ -326,8 +1024,9 @@ public class BST implements BSTInterface {
      * @param succ - The successor of the node to remove.
      * @note - It is assumed that the locks on the involved nodes are held
      *         (both nodes in toRemove and both nodes in succ).
+     * @return the lowest node whose subtree changed.
      */
-    private void removeWithNonLeafSucessor(NodePair toRemove, NodePair succ) {
+    private Node removeWithNonLeafSucessor(NodePair toRemove, NodePair succ, Stamp stamp) {
         while (true) {
             NodePair pair = findSuccessor(succ.current);
             Node pred = pair.parent;
@@ -343,6 +1042,9 @@ public class BST implements BSTInterface {
                         continue;
                     }
                     if (validate(pair)) {
+                        saveLinks(curr, stamp);
+                        saveLinks(succ.parent, stamp);
+                        saveLinks(succ.current, stamp);
                         // Change curr's left child to point to the original succcessor (which is its predecessor).
                         // curr.right holds another subtree, which is fine
                         curr.left = succ.current;
@@ -352,8 +1054,7 @@ public class BST implements BSTInterface {
                         // The successor now becomes a leaf, as its left side is empty.
                         succ.current.right = sentinel;
                         // Now succ.current is the left child of curr, and it is a leaf - so we can remove it!
-                        removeAndReplaceWithLeaf(toRemove, new NodePair(curr, succ.current, false));
-                        return;
+                        return removeAndReplaceWithLeaf(toRemove, new NodePair(curr, succ.current, false), stamp);
                     }
                 }
             }
@@ -370,8 +1071,14 @@ public class BST implements BSTInterface {
      * @param replacementLeaf - The information about the leaf to move.
      * @note - It is assumed that the locks on the involved nodes are held
      *         (both nodes in toRemove and both nodes in replacementLeaf).
+     * @return the lowest node whose subtree changed - the leaf's old parent, or the leaf itself if its parent was removed.
      */
-    private void removeAndReplaceWithLeaf(NodePair toRemove, NodePair replacementLeaf) {
+    private Node removeAndReplaceWithLeaf(NodePair toRemove, NodePair replacementLeaf, Stamp stamp) {
+        saveLiveness(toRemove.current, stamp);
+        saveLinks(replacementLeaf.current, stamp);
+        saveLinks(toRemove.parent, stamp);
+        saveLinks(replacementLeaf.parent, stamp);
+        moves.incrementAndGet();
         toRemove.current.marked = true;
         // Note: if the successor is the direct child of the node to remove,
         // we don't want to create a cycle with it pointing to itself
@@ -382,13 +1089,485 @@ public class BST implements BSTInterface {
         replacementLeaf.current.left = toRemove.current.left;
         toRemove.parent.setChild(replacementLeaf.current, toRemove.isRight);
         replacementLeaf.parent.setChild(sentinel, replacementLeaf.isRight);
+        return replacementLeaf.parent == toRemove.current ? replacementLeaf.current : replacementLeaf.parent;
+    }
+
+    /**
+     * Recompute the aggregates of the given node and of all its ancestors, bottom-up.
+     * Each node is recomputed from its children while holding only its own lock, after checking that the node
+     * below it on the path is still its child. If the path changed, the walk starts over along the new path.
+     * Every update recomputes the path above its changes after making them, so once the updates stop,
+     * every aggregate is exact.
+     * @param changed - The lowest node whose subtree changed.
+     */
+    private void updateAggregates(final Node changed) {
+        if (changed == head) {
+            // The root was removed and replaced by one of its children, whose aggregates are unchanged
+            return;
+        }
+        Node[] path = new Node[64];
+        restart:
+        while (true) {
+            // The search path to changed.key passes through every node whose subtree includes the change
+            int depth = 0;
+            Node curr = head.right;
+            while (isRealNode(curr)) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, 2 * depth);
+                }
+                path[depth++] = curr;
+                if (curr.key == changed.key) {
+                    break;
+                }
+                curr = curr.key < changed.key ? curr.right : curr.left;
+            }
+            if (isSentinelNode(curr) && !changed.marked) {
+                // The node was not removed, so it was missed while being moved by another remove - like in findKey
+                continue;
+            }
+            for (int i = depth - 1; i >= 0; i--) {
+                final Node node = path[i];
+                synchronized (node) {
+                    if (i + 1 < depth && node.left != path[i + 1] && node.right != path[i + 1]) {
+                        continue restart;
+                    }
+                    final AugNode aug = (AugNode) node;
+                    final boolean live = !node.deleted;
+                    aug.count = (live ? 1 : 0) + countOf(node.left) + countOf(node.right);
+                    aug.sum = (live ? node.key : 0) + sumOf(node.left) + sumOf(node.right);
+                }
+            }
+            return;
+        }
+    }
+
+    private static int countOf(Node node) {
+        return isSentinelNode(node) ? 0 : ((AugNode) node).count;
+    }
+
+    private static long sumOf(Node node) {
+        return isSentinelNode(node) ? 0 : ((AugNode) node).sum;
+    }
+
+    /**
+     * The smallest key in the tree, or an empty result if the tree is empty.
+     * Concurrently with updates, the result is a hint, like the other single-traversal lookups.
+     */
+    public final OptionalInt first() {
+        final Node node = firstLive(head.right);
+        return node == null ? OptionalInt.empty() : OptionalInt.of(node.key);
+    }
+
+    /**
+     * The largest key in the tree, or an empty result if the tree is empty.
+     * Concurrently with updates, the result is a hint, like the other single-traversal lookups.
+     */
+    public final OptionalInt last() {
+        final Node node = lastLive(head.right);
+        return node == null ? OptionalInt.empty() : OptionalInt.of(node.key);
+    }
+
+    /**
+     * Remove and return the smallest key in the tree, or an empty result if the tree is empty.
+     * Like ConcurrentSkipListSet.pollFirst(), it removes the smallest key it finds, so a smaller key that is inserted
+     * concurrently may stay in the tree. Every consumer competes for the same node; see pollApproxFirst().
+     */
+    public final OptionalInt pollFirst() {
+        while (true) {
+            final Node node = firstLive(head.right);
+            if (node == null) {
+                return OptionalInt.empty();
+            }
+            if (remove(node.key)) {
+                return OptionalInt.of(node.key);
+            }
+        }
+    }
+
+    /**
+     * Remove and return the largest key in the tree, or an empty result if the tree is empty.
+     * See pollFirst() for the guarantees under concurrent updates.
+     */
+    public final OptionalInt pollLast() {
+        while (true) {
+            final Node node = lastLive(head.right);
+            if (node == null) {
+                return OptionalInt.empty();
+            }
+            if (remove(node.key)) {
+                return OptionalInt.of(node.key);
+            }
+        }
+    }
+
+    /**
+     * Remove and return one of the `spread` smallest keys, chosen at random (in the style of the SprayList),
+     * or an empty result if the tree is empty. Concurrent consumers mostly remove different keys, instead of all
+     * competing for the smallest one. Choosing the key takes O(depth) on an augmented tree, and O(depth + spread) otherwise.
+     * @param spread - The number of smallest keys to choose from; 1 makes it pollFirst().
+     */
+    public final OptionalInt pollApproxFirst(final int spread) {
+        if (spread < 1) throw new IllegalArgumentException("spread must be > 0");
+        while (true) {
+            final OptionalInt key = select(ThreadLocalRandom.current().nextInt(spread));
+            if (!key.isPresent()) {
+                // Fewer keys than the spread
+                return pollFirst();
+            }
+            if (remove(key.getAsInt())) {
+                return key;
+            }
+        }
+    }
+
+    /**
+     * The first node of the subtree, in order, that holds a key of the set.
+     * The walk only passes over more than the leftmost path where there are removed or logically deleted nodes.
+     */
+    private static Node firstLive(Node current) {
+        if (isSentinelNode(current)) {
+            return null;
+        }
+        final Node left = firstLive(current.left);
+        if (left != null) {
+            return left;
+        }
+        return isLive(current) ? current : firstLive(current.right);
+    }
+
+    private static Node lastLive(Node current) {
+        if (isSentinelNode(current)) {
+            return null;
+        }
+        final Node right = lastLive(current.right);
+        if (right != null) {
+            return right;
+        }
+        return isLive(current) ? current : lastLive(current.left);
+    }
+
+    /**
+     * The number of keys in the tree that are smaller than the given key.
+     * For an augmented tree this takes O(depth); otherwise, the smaller keys are counted one by one.
+     * The aggregate queries are exact when no updates are running. Concurrently with updates, they are
+     * approximate: an update is reflected once it finishes, and a node that is being moved may be missed.
+     */
+    public final int rank(final int key) {
+        return rangeCount(Integer.MIN_VALUE, key);
+    }
+
+    /**
+     * The i-th smallest key in the tree (counting from 0), or an empty result if the tree has at most i keys.
+     * See rank() for the guarantees under concurrent updates.
+     */
+    public final OptionalInt select(int i) {
+        if (i < 0) {
+            return OptionalInt.empty();
+        }
+        if (!augmented) {
+            final int[] result = new int[1];
+            return selectByWalk(head.right, i, result) < 0 ? OptionalInt.of(result[0]) : OptionalInt.empty();
+        }
+        Node curr = head.right;
+        while (isRealNode(curr)) {
+            final Node left = curr.left;
+            final int smaller = countOf(left);
+            final int self = curr.deleted ? 0 : 1;
+            if (i < smaller) {
+                curr = left;
+            } else if (i < smaller + self) {
+                return OptionalInt.of(curr.key);
+            } else {
+                i -= smaller + self;
+                curr = curr.right;
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * An in-order walk that stops at the i-th key.
+     * @return the number of keys still to skip, or -1 once the key was found and stored in result[0].
+     */
+    private int selectByWalk(Node current, int i, int[] result) {
+        if (isSentinelNode(current)) {
+            return i;
+        }
+        i = selectByWalk(current.left, i, result);
+        if (i < 0) {
+            return i;
+        }
+        if (current.deleted) {
+            return selectByWalk(current.right, i, result);
+        }
+        if (i == 0) {
+            result[0] = current.key;
+            return -1;
+        }
+        return selectByWalk(current.right, i - 1, result);
+    }
+
+    /**
+     * The number of keys in the tree in the range [lo, hi).
+     * See rank() for the cost and for the guarantees under concurrent updates.
+     */
+    public final int rangeCount(final int lo, final int hi) {
+        if (!augmented) {
+            return (int) rangeByWalk(head.right, lo, hi, false);
+        }
+        return hi <= lo ? 0 : (int) (below(hi, false) - below(lo, false));
+    }
+
+    /**
+     * The sum of the keys in the tree in the range [lo, hi).
+     * See rank() for the cost and for the guarantees under concurrent updates.
+     */
+    public final long rangeSum(final int lo, final int hi) {
+        if (!augmented) {
+            return rangeByWalk(head.right, lo, hi, true);
+        }
+        return hi <= lo ? 0 : below(hi, true) - below(lo, true);
+    }
+
+    /**
+     * The number (or sum) of the keys smaller than the given key, from the aggregates of the subtrees to the left of its search path.
+     */
+    private long below(final int key, final boolean sum) {
+        long result = 0;
+        Node curr = head.right;
+        while (isRealNode(curr)) {
+            if (curr.key < key) {
+                final Node left = curr.left;
+                if (curr.deleted) {
+                    result += sum ? sumOf(left) : countOf(left);
+                } else {
+                    result += sum ? curr.key + sumOf(left) : 1 + countOf(left);
+                }
+                curr = curr.right;
+            } else {
+                curr = curr.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number (or sum) of the keys in [lo, hi), walking only the subtrees that may hold such keys.
+     */
+    private long rangeByWalk(Node current, int lo, int hi, boolean sum) {
+        if (isSentinelNode(current)) {
+            return 0;
+        }
+        long result = 0;
+        if (current.key > lo) {
+            result += rangeByWalk(current.left, lo, hi, sum);
+        }
+        if (current.key >= lo && current.key < hi && !current.deleted) {
+            result += sum ? current.key : 1;
+        }
+        if (current.key < hi - 1L) {
+            result += rangeByWalk(current.right, lo, hi, sum);
+        }
+        return result;
+    }
+
+    /**
+     * Take a snapshot of a versioned tree in O(1): a consistent view of the tree, which holds every update
+     * that finished before this call, none that started after it returned, and either all or none of the changes
+     * of each concurrent update. It may be read concurrently with updates, and must be closed after use,
+     * since updates keep versions for it while it is open.
+     * Opening a snapshot while none is open waits for the running updates to finish.
+     * SetOps.split() and SetOps.join() relink nodes without versioning them, so they reject versioned trees.
+     */
+    public final Snapshot snapshot() {
+        if (!versioned) throw new UnsupportedOperationException("only a versioned() tree supports snapshots");
+        synchronized (snapshots) {
+            if (!versioning) {
+                versioning = true;
+                // Updates that started before keep changing nodes in place
+                for (int i = 0; i < STRIPES; i++) {
+                    while (writers.get(i * PAD) != 0) {
+                        Thread.yield();
+                    }
+                }
+            }
+            final long time = clock.get();
+            final Integer open = snapshots.get(time);
+            snapshots.put(time, open == null ? 1 : open + 1);
+            oldestSnapshot = snapshots.firstKey();
+            // Updates that resolve their stamps from now on are not in the snapshot
+            clock.set(time + 1);
+            return new Snapshot(this, time);
+        }
+    }
+
+    private void release(long time) {
+        synchronized (snapshots) {
+            final int open = snapshots.get(time);
+            if (open > 1) {
+                snapshots.put(time, open - 1);
+            } else {
+                snapshots.remove(time);
+            }
+            if (snapshots.isEmpty()) {
+                oldestSnapshot = Long.MAX_VALUE;
+                versioning = false;
+            } else {
+                oldestSnapshot = snapshots.firstKey();
+            }
+        }
     }
 
+    /**
+     * The version of a node's state that a snapshot at the given time sees, from the newest version of that state,
+     * or null if it sees the node's current state: no update changed it after the snapshot.
+     * Waits while the newest version belongs to an update that is still running.
+     */
+    private static Version versionAt(Version newest, long time) {
+        if (newest == null) {
+            return null;
+        }
+        for (int spins = 0; newest.until.time == Stamp.UNRESOLVED; spins++) {
+            if ((spins & 0xff) == 0xff) {
+                Thread.yield();
+            }
+        }
+        if (newest.until.time <= time) {
+            return null;
+        }
+        // The oldest version that was replaced after the snapshot; it is kept until the snapshot is closed
+        Version v = newest;
+        for (Version prev = v.prev; prev != null && prev.until.time > time; prev = v.prev) {
+            v = prev;
+        }
+        return v;
+    }
+
+    /**
+     * The children of the node at the given time, as a `links` version.
+     */
+    private static Version linksAt(Node node, long time) {
+        final VersionedNode v = (VersionedNode) node;
+        while (true) {
+            final Version newest = v.links;
+            final Version version = versionAt(newest, time);
+            if (version != null) {
+                return version;
+            }
+            final Version current = new Version(node.left, node.right, false, null, null);
+            // An update saves the children before changing them, so if no version was added, they were not changed
+            if (v.links == newest) {
+                return current;
+            }
+        }
+    }
 
-    // Return your ID #
-    // TODO: apply ID
+    /**
+     * Whether the node held its key at the given time.
+     */
+    private static boolean liveAt(Node node, long time) {
+        final VersionedNode v = (VersionedNode) node;
+        while (true) {
+            final Version newest = v.liveness;
+            final Version version = versionAt(newest, time);
+            if (version != null) {
+                return version.live;
+            }
+            final boolean current = isLive(node);
+            if (v.liveness == newest) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * A consistent view of a versioned tree, at the time it was taken (see snapshot()).
+     * Its methods may be called concurrently with updates of the tree and with each other, until it is closed.
+     */
+    public static final class Snapshot implements AutoCloseable {
+        private final BST tree;
+        private final long time;
+        private volatile boolean closed;
+
+        Snapshot(BST tree, long time) {
+            this.tree = tree;
+            this.time = time;
+        }
+
+        private Node root() {
+            if (closed) throw new IllegalStateException("the snapshot is closed");
+            return linksAt(tree.head, time).right;
+        }
+
+        Version links(Node node) {
+            return linksAt(node, time);
+        }
+
+        boolean live(Node node) {
+            return liveAt(node, time);
+        }
+
+        public boolean contains(final int key) {
+            Node curr = root();
+            while (isRealNode(curr)) {
+                if (curr.key == key) {
+                    return liveAt(curr, time);
+                }
+                final Version links = linksAt(curr, time);
+                curr = curr.key < key ? links.right : links.left;
+            }
+            return false;
+        }
+
+        // Takes time proportional to the size of the tree, like BST.size().
+        public int size() {
+            final int[] size = new int[1];
+            forEachKey(key -> size[0]++);
+            return size[0];
+        }
+
+        public long getKeysum() {
+            final long[] sum = new long[1];
+            forEachKey(key -> sum[0] += key);
+            return sum[0];
+        }
+
+        /**
+         * Pass every key in the snapshot to the consumer, in ascending order.
+         */
+        public void forEachKey(IntConsumer consumer) {
+            spliterator().forEachRemaining(consumer);
+        }
+
+        /**
+         * A spliterator over the keys in the snapshot, in ascending order, which splits at subtree boundaries.
+         * Its size is unknown, so that it is created in O(1).
+         */
+        public Spliterator.OfInt spliterator() {
+            return new KeySpliterator(root(), false, Long.MAX_VALUE, this);
+        }
+
+        /**
+         * A stream of the keys in the snapshot, in ascending order; call parallel() on it to process subtrees in parallel.
+         */
+        public IntStream stream() {
+            return StreamSupport.intStream(spliterator(), false);
+        }
+
+        /**
+         * Close the snapshot, so updates stop keeping versions for it. Closing it again has no effect.
+         */
+        public void close() {
+            if (!closed) {
+                closed = true;
+                tree.release(time);
+            }
+        }
+    }
+
+    // Returns the name of the tree's mode, as registered in main.Algorithms.
     public String getName() {
-        return "XXXXXXXXX";
+        return "BST" + (lazy ? "-lazy" : "") + (augmented ? "-augmented" : "") + (versioned ? "-snapshot" : "");
     }
 
     // Returns size of the tree.
@@ -403,7 +1582,7 @@ public class BST implements BSTInterface {
         if (isSentinelNode(current)) {
             return 0;
         }
-        return 1 + getSize(current.left) + getSize(current.right);
+        return (current.deleted ? 0 : 1) + getSize(current.left) + getSize(current.right);
     }
 
     // Returns the sum of keys in the tree
@@ -420,6 +1599,306 @@ public class BST implements BSTInterface {
         if (isSentinelNode(current)) {
             return 0;
         }
-        return (long)current.key + sumKeys(current.left) + sumKeys(current.right);
+        return (current.deleted ? 0 : (long)current.key) + sumKeys(current.left) + sumKeys(current.right);
+    }
+
+    /**
+     * Pass every key of the tree to the consumer, in ascending order.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     * @param consumer - The consumer that receives the keys.
+     */
+    final void forEachKey(IntConsumer consumer) {
+        forEachKey(head.right, consumer);
+    }
+
+    private static void forEachKey(Node current, IntConsumer consumer) {
+        if (isSentinelNode(current)) {
+            return;
+        }
+        forEachKey(current.left, consumer);
+        if (!current.deleted) {
+            consumer.accept(current.key);
+        }
+        forEachKey(current.right, consumer);
+    }
+
+    /**
+     * A spliterator over the keys of the tree, in ascending order, which splits at subtree boundaries.
+     * On an augmented tree, it and all its splits know their exact size; otherwise, only the whole tree does.
+     * Like size() and getKeysum(), it must only be used when there are no concurrent operations.
+     */
+    public final Spliterator.OfInt spliterator() {
+        return augmented ? new KeySpliterator(head.right, true, 0, null) : new KeySpliterator(head.right, false, size(), null);
+    }
+
+    /**
+     * A stream of the keys of the tree, in ascending order; call parallel() on it to process subtrees in parallel.
+     * Like size() and getKeysum(), it must only be used when there are no concurrent operations.
+     */
+    public final IntStream stream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * The keys that remain to be traversed are a stack of fragments, in ascending key order from the top:
+     * a whole subtree, or the key of a single node. A whole subtree is traversed by replacing it with its right subtree,
+     * its root and its left subtree. Splitting hands the fragments at the top (the smaller keys) to a new spliterator;
+     * a stack of a single subtree is first split at the subtree's root.
+     * A spliterator of a snapshot reads the children and the membership of each node at the snapshot's time,
+     * and only pushes the nodes that held their key then.
+     */
+    static final class KeySpliterator implements Spliterator.OfInt {
+        private Node[] nodes = new Node[16];
+        private boolean[] whole = new boolean[16];
+        private int top = 0; // the number of fragments
+        // the nodes hold exact subtree counts, so every spliterator knows its exact size
+        private final boolean exact;
+        // if not exact: the number of remaining keys, which is exact until the first split
+        private long estimate;
+        private boolean sized;
+        // the snapshot to read, or null to read the tree itself
+        private final Snapshot view;
+
+        KeySpliterator(Node root, boolean exact, long estimate, Snapshot view) {
+            this.exact = exact;
+            this.estimate = estimate;
+            this.sized = view == null;
+            this.view = view;
+            if (isRealNode(root)) {
+                push(root, true);
+            }
+        }
+
+        private void push(Node node, boolean isWhole) {
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * top);
+                whole = Arrays.copyOf(whole, 2 * top);
+            }
+            nodes[top] = node;
+            whole[top] = isWhole;
+            top++;
+        }
+
+        private void expand(Node node) {
+            if (view != null) {
+                final Version links = view.links(node);
+                if (isRealNode(links.right)) {
+                    push(links.right, true);
+                }
+                if (view.live(node)) {
+                    push(node, false);
+                }
+                if (isRealNode(links.left)) {
+                    push(links.left, true);
+                }
+                return;
+            }
+            if (isRealNode(node.right)) {
+                push(node.right, true);
+            }
+            push(node, false);
+            if (isRealNode(node.left)) {
+                push(node.left, true);
+            }
+        }
+
+        private static long sizeOf(Node node, boolean isWhole) {
+            return isWhole ? countOf(node) : node.deleted ? 0 : 1;
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            while (top > 0) {
+                final Node node = nodes[--top];
+                nodes[top] = null;
+                if (whole[top]) {
+                    expand(node);
+                } else if (view != null || !node.deleted) {
+                    if (!exact && estimate > 0) {
+                        estimate--;
+                    }
+                    action.accept(node.key);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (view != null) {
+                // The stack keeps the traversal iterative, whatever the depth of the tree
+                while (tryAdvance(action)) {
+                }
+                return;
+            }
+            while (top > 0) {
+                final Node node = nodes[--top];
+                nodes[top] = null;
+                if (whole[top]) {
+                    forEachKey(node, action);
+                } else if (!node.deleted) {
+                    action.accept(node.key);
+                }
+            }
+            estimate = 0;
+        }
+
+        public Spliterator.OfInt trySplit() {
+            if (top == 1 && whole[0]) {
+                final Node node = nodes[0];
+                nodes[0] = null;
+                top = 0;
+                expand(node);
+            }
+            if (top < 2) {
+                return null;
+            }
+            // The prefix gets the fragments [k, top): about half of the keys if they are known, else half of the fragments
+            int k = top - top / 2;
+            if (exact) {
+                final long half = estimateSize() / 2;
+                long taken = sizeOf(nodes[top - 1], whole[top - 1]);
+                k = top - 1;
+                while (k > 1 && taken + sizeOf(nodes[k - 1], whole[k - 1]) <= half) {
+                    k--;
+                    taken += sizeOf(nodes[k], whole[k]);
+                }
+            }
+            final KeySpliterator prefix = new KeySpliterator(null, exact, 0, view);
+            for (int i = k; i < top; i++) {
+                prefix.push(nodes[i], whole[i]);
+                nodes[i] = null;
+            }
+            top = k;
+            if (!exact) {
+                prefix.estimate = estimate / 2;
+                estimate -= prefix.estimate;
+                prefix.sized = sized = false;
+            }
+            return prefix;
+        }
+
+        public long estimateSize() {
+            if (!exact) {
+                return estimate;
+            }
+            long size = 0;
+            for (int i = 0; i < top; i++) {
+                size += sizeOf(nodes[i], whole[i]);
+            }
+            return size;
+        }
+
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | (exact ? SIZED | SUBSIZED : sized ? SIZED : 0) | (view != null ? IMMUTABLE : 0);
+        }
+
+        public Comparator<? super Integer> getComparator() {
+            return null; // natural order
+        }
+    }
+
+    /**
+     * Get the keys of the tree in ascending order.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    final int[] toSortedArray() {
+        final int[] keys = new int[size()];
+        final int[] next = new int[1];
+        forEachKey(key -> keys[next[0]++] = key);
+        return keys;
+    }
+
+    /**
+     * Create an immutable, read-optimized copy of the tree. The tree itself is not changed.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    public final FrozenBST freeze() {
+        return new FrozenBST(toSortedArray());
+    }
+
+    /**
+     * @return whether the tree supports snapshots (see versioned()).
+     */
+    final boolean isVersioned() {
+        return versioned;
+    }
+
+    /**
+     * @return an empty tree with the same mode as this one (see augmented(), lazy() and versioned()).
+     */
+    final BST emptyCopy() {
+        return new BST(augmented, lazy, versioned);
+    }
+
+    /**
+     * Build a balanced tree from sorted, distinct keys in O(n), by linking the nodes directly.
+     * @param sortedKeys - The keys, in strictly ascending order.
+     * @param from - The index of the first key to use (inclusive).
+     * @param to - The index of the last key to use (exclusive).
+     */
+    static BST fromSorted(int[] sortedKeys, int from, int to) {
+        return fromSorted(new BST(), sortedKeys, from, to);
+    }
+
+    /**
+     * Like fromSorted(sortedKeys, from, to), but links the keys into the given empty tree, so the result has its mode.
+     * Large ranges are built in parallel on the common fork/join pool.
+     */
+    static BST fromSorted(BST tree, int[] sortedKeys, int from, int to) {
+        tree.head.right = to - from <= BuildTask.SEQUENTIAL_THRESHOLD ? buildBalanced(tree, sortedKeys, from, to)
+                : ForkJoinPool.commonPool().invoke(new BuildTask(tree, sortedKeys, from, to));
+        return tree;
+    }
+
+    private static Node buildBalanced(BST tree, int[] sortedKeys, int from, int to) {
+        if (from >= to) {
+            return tree.sentinel;
+        }
+        final int mid = (from + to) >>> 1;
+        return tree.link(sortedKeys[mid], buildBalanced(tree, sortedKeys, from, mid), buildBalanced(tree, sortedKeys, mid + 1, to));
+    }
+
+    /**
+     * @return a new node of this tree with the given children, whose aggregates (if any) include them.
+     */
+    private Node link(int key, Node left, Node right) {
+        final Node node = newNode(key);
+        node.left = left;
+        node.right = right;
+        if (augmented) {
+            ((AugNode) node).count = 1 + countOf(left) + countOf(right);
+            ((AugNode) node).sum = key + sumOf(left) + sumOf(right);
+        }
+        return node;
+    }
+
+    /**
+     * Builds the two halves of a range in parallel, until they are small enough to build sequentially.
+     */
+    private static final class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        static final int SEQUENTIAL_THRESHOLD = 8192;
+        private final BST tree;
+        private final int[] sortedKeys;
+        private final int from, to;
+
+        BuildTask(BST tree, int[] sortedKeys, int from, int to) {
+            this.tree = tree;
+            this.sortedKeys = sortedKeys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Node compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return buildBalanced(tree, sortedKeys, from, to);
+            }
+            final int mid = (from + to) >>> 1;
+            final BuildTask left = new BuildTask(tree, sortedKeys, from, mid);
+            left.fork();
+            final Node right = new BuildTask(tree, sortedKeys, mid + 1, to).compute();
+            return tree.link(sortedKeys[mid], left.join(), right);
+        }
     }
 }
@@ -0,0 +1,120 @@
+package algorithms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import main.BSTInterface;
+import main.Evicting;
+
+/**
+ * A BST with a bounded number of keys, for use as a membership cache of recently seen keys.
+ * When an insert takes the tree above its capacity, a key is evicted with the CLOCK policy (an approximation of LRU):
+ * a successful contains() sets the node's `referenced` bit, and the clock hand sweeps the keys in ascending order,
+ * clearing set bits and evicting the first key whose bit is already clear.
+ *
+ * There is no global lock. The hand is a key cursor advanced by CAS, so concurrent evictions examine different keys,
+ * and the bit is only written by a lookup if it is not already set, so hot keys do not bounce their cache line.
+ */
+public class BoundedBST implements BSTInterface, Evicting {
+
+    private final BST tree = new BST();
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+    // The clock hand: the smallest key that may be examined next
+    private final AtomicInteger hand = new AtomicInteger(Integer.MIN_VALUE);
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedKeysum = new LongAdder();
+
+    /**
+     * @param capacity - The largest number of keys the tree holds once all inserts have returned.
+     */
+    public BoundedBST(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+    }
+
+    public final boolean contains(final int key) {
+        final BST.Node node = tree.findNode(key);
+        if (node == null) {
+            return false;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return true;
+    }
+
+    public final boolean insert(final int key) {
+        if (!tree.insert(key)) {
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            evict();
+        }
+        return true;
+    }
+
+    public final boolean remove(final int key) {
+        if (!tree.remove(key)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Advance the clock hand until a key whose referenced bit is clear is found, and remove it.
+     */
+    private void evict() {
+        while (true) {
+            final int from = hand.get();
+            final BST.Node node = tree.ceilingNode(from);
+            if (node == null) {
+                // Wrap around, unless the tree was emptied by concurrent removes
+                if (from == Integer.MIN_VALUE) {
+                    return;
+                }
+                hand.compareAndSet(from, Integer.MIN_VALUE);
+                continue;
+            }
+            final int next = node.key == Integer.MAX_VALUE ? Integer.MIN_VALUE : node.key + 1;
+            if (!hand.compareAndSet(from, next)) {
+                // Another thread moved the hand - continue from where it left it
+                continue;
+            }
+            if (node.referenced) {
+                node.referenced = false;
+                continue;
+            }
+            if (tree.remove(node.key)) {
+                size.decrementAndGet();
+                evictions.increment();
+                evictedKeysum.add(node.key);
+                return;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getEvictedKeysum() {
+        return evictedKeysum.sum();
+    }
+
+    public String getName() {
+        return "BST-bounded";
+    }
+
+    public final int size() {
+        return tree.size();
+    }
+
+    public final long getKeysum() {
+        return tree.getKeysum();
+    }
+}
@@ -0,0 +1,239 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import main.BSTInterface;
+import main.Buffering;
+
+/**
+ * A decorator with relaxed consistency for write-heavy jobs that tolerate seeing updates a little late:
+ * each thread collects its updates in a private buffer, and applies them to the shared tree in key order once the
+ * buffer holds batchSize updates, or its oldest update is maxDelayNanos old (checked whenever the thread makes
+ * an operation). Applying a sorted batch walks neighbouring paths of the tree one after the other, which keeps
+ * them in the cache.
+ *
+ * An update returns the result predicted from the thread's own buffer, or from the tree if the buffer has no update
+ * of the key, and only updates that are predicted to succeed are buffered. Lookups see the thread's own buffered
+ * updates (read-your-writes), but other threads see them only once they are applied. If another thread changed
+ * the key in between, the applied update finds nothing to change; it is counted as mispredicted.
+ *
+ * Buffers are meant to be small (tens to hundreds of updates), since each operation scans its thread's buffer.
+ */
+public class BufferedBST implements BSTInterface, Buffering {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_DELAY_MS = 5;
+
+    /**
+     * The updates of one thread that were not applied yet, in the order they were made.
+     */
+    static final class Buffer {
+        volatile Thread owner;
+        final int[] keys;
+        final boolean[] inserts;
+        final long[] times; // System.nanoTime() when each update was buffered
+        int count;
+
+        Buffer(Thread owner, int batchSize) {
+            this.owner = owner;
+            this.keys = new int[batchSize];
+            this.inserts = new boolean[batchSize];
+            this.times = new long[batchSize];
+        }
+
+        /**
+         * @return the index of the latest buffered update of the key, or -1 if there is none.
+         */
+        int lastIndexOf(int key) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (keys[i] == key) return i;
+            }
+            return -1;
+        }
+    }
+
+    private final BSTInterface tree;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    // Every buffer ever created; replaced as a whole when it grows
+    private volatile Buffer[] buffers = new Buffer[0];
+    private final ThreadLocal<Buffer> buffer = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return register();
+        }
+    };
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder staleness = new LongAdder();
+    private final LongAccumulator maxStaleness = new LongAccumulator(Math::max, 0);
+    private final LongAdder mispredicted = new LongAdder();
+    private final LongAdder keysumCorrection = new LongAdder();
+
+    /**
+     * @param tree - The shared tree the updates are applied to.
+     * @param batchSize - The number of updates a thread buffers before applying them.
+     * @param maxDelayNanos - How long an update may stay buffered, as long as its thread keeps making operations.
+     */
+    public BufferedBST(BSTInterface tree, int batchSize, long maxDelayNanos) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be > 0");
+        if (maxDelayNanos < 0) throw new IllegalArgumentException("maxDelayNanos must be >= 0");
+        this.tree = tree;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * Give the calling thread a buffer: the buffer of a dead thread if there is one, or a new one.
+     * The updates left in a dead thread's buffer are applied by the thread that takes it over.
+     */
+    private synchronized Buffer register() {
+        final Thread self = Thread.currentThread();
+        for (Buffer b : buffers) {
+            if (!b.owner.isAlive()) {
+                b.owner = self;
+                return b;
+            }
+        }
+        final Buffer b = new Buffer(self, batchSize);
+        final Buffer[] grown = Arrays.copyOf(buffers, buffers.length + 1);
+        grown[buffers.length] = b;
+        buffers = grown;
+        return b;
+    }
+
+    public final boolean contains(final int key) {
+        final Buffer b = buffer.get();
+        if (b.count > 0) {
+            final int last = b.lastIndexOf(key);
+            final boolean result = last >= 0 ? b.inserts[last] : tree.contains(key);
+            if (System.nanoTime() - b.times[0] >= maxDelayNanos) {
+                apply(b);
+            }
+            return result;
+        }
+        return tree.contains(key);
+    }
+
+    public final boolean insert(final int key) {
+        return update(key, true);
+    }
+
+    public final boolean remove(final int key) {
+        return update(key, false);
+    }
+
+    private boolean update(final int key, final boolean insert) {
+        final Buffer b = buffer.get();
+        final int last = b.lastIndexOf(key);
+        final boolean present = last >= 0 ? b.inserts[last] : tree.contains(key);
+        if (present == insert) {
+            // Nothing to change
+            return false;
+        }
+        final long now = System.nanoTime();
+        b.keys[b.count] = key;
+        b.inserts[b.count] = insert;
+        b.times[b.count] = now;
+        b.count++;
+        if (b.count == batchSize || now - b.times[0] >= maxDelayNanos) {
+            apply(b);
+        }
+        return true;
+    }
+
+    /**
+     * Apply the calling thread's buffered updates to the tree now.
+     */
+    public final void flush() {
+        apply(buffer.get());
+    }
+
+    /**
+     * Apply the buffered updates in ascending key order. The updates of a key keep the order they were made in.
+     */
+    private void apply(final Buffer b) {
+        final int n = b.count;
+        if (n == 0) {
+            return;
+        }
+        // Sort by key, then by the index of the update: with the key in the high half, the signed order of the longs
+        // is the signed order of the keys
+        final long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) b.keys[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        long wrongKeysum = 0;
+        int wrong = 0;
+        for (int j = 0; j < n; j++) {
+            final int i = (int) order[j];
+            final int key = b.keys[i];
+            if (b.inserts[i] ? !tree.insert(key) : !tree.remove(key)) {
+                // The update returned true, but another thread made the same change first
+                wrongKeysum += b.inserts[i] ? -key : key;
+                wrong++;
+            }
+        }
+        final long now = System.nanoTime();
+        long stale = 0;
+        for (int i = 0; i < n; i++) {
+            stale += now - b.times[i];
+        }
+        b.count = 0;
+        applied.add(n);
+        staleness.add(stale);
+        maxStaleness.accumulate(now - b.times[0]);
+        if (wrong > 0) {
+            mispredicted.add(wrong);
+            keysumCorrection.add(wrongKeysum);
+        }
+    }
+
+    /**
+     * Apply the buffered updates of every thread. Only called when there are no concurrent operations.
+     */
+    private void applyAll() {
+        for (Buffer b : buffers) {
+            apply(b);
+        }
+    }
+
+    public long getAppliedCount() {
+        return applied.sum();
+    }
+
+    public long getStalenessNanos() {
+        return staleness.sum();
+    }
+
+    public long getMaxStalenessNanos() {
+        return maxStaleness.get();
+    }
+
+    public long getMispredictedCount() {
+        return mispredicted.sum();
+    }
+
+    public long getKeysumCorrection() {
+        return keysumCorrection.sum();
+    }
+
+    public String getName() {
+        return tree.getName() + "-buffered";
+    }
+
+    // Returns the size of the tree, once every buffered update is applied.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        applyAll();
+        return tree.size();
+    }
+
+    // Returns the sum of keys in the tree, once every buffered update is applied.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        applyAll();
+        return tree.getKeysum();
+    }
+}
@@ -0,0 +1,232 @@
+package algorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A ring of change records in a memory-mapped file, written by one process and tailed by any number of others
+ * on the same host. Record `seq` lives in slot seq % capacity, as [commit:8][op:4 key:4][epochNanos:8][unused:8].
+ * A writer first clears the slot's commit word, then writes the record, then sets the commit word to seq + 1,
+ * with a store fence before each of the last two steps. A reader reads the commit word, the record, and the commit
+ * word again, with load fences in between; if the commit word is larger than expected, the writer has lapped the
+ * reader and the record was lost.
+ *
+ * Mapped memory is outside the Java memory model, so the fences come from sun.misc.Unsafe (storeFence and loadFence
+ * exist since Java 8), looked up reflectively. If it is not available, a volatile access stands in for the fence.
+ *
+ * Records are timestamped with epochNanos(), the wall clock, since System.nanoTime() has an arbitrary origin in each
+ * process. It keeps nanoTime's resolution by adding the nanoTime elapsed since the process saw the wall clock tick.
+ *
+ * File layout (native byte order): [magic:4][version:4][capacity:4] ... [claimed:8 at CLAIMED_OFFSET], then the slots.
+ * A new ring file is built under a temporary name and renamed over the old one, so processes that still map the old
+ * file keep a valid mapping (truncating a mapped file would crash them).
+ */
+final class ChangeRing {
+
+    static final int MAGIC = 0x52494e47; // "RING"
+    static final int VERSION = 2; // 1 stamped records with System.nanoTime()
+    static final int OP_INSERT = 1;
+    static final int OP_REMOVE = 2;
+    private static final int CLAIMED_OFFSET = 64; // on its own cache line
+    private static final int HEADER_BYTES = 128;
+    private static final int SLOT_BYTES = 32;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES;
+
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+    private static volatile int fallbackFence;
+    // epochNanos() = EPOCH_NANOS + (System.nanoTime() - EPOCH_NANO_TIME)
+    private static final long EPOCH_NANOS;
+    private static final long EPOCH_NANO_TIME;
+
+    static {
+        MethodHandle store = null, load = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            final Object unsafe = field.get(null);
+            final MethodType voidType = MethodType.methodType(void.class);
+            store = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", voidType).bindTo(unsafe);
+            load = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", voidType).bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall back to volatile accesses
+        }
+        STORE_FENCE = store;
+        LOAD_FENCE = load;
+
+        // Wait for the millisecond clock to tick, so the anchor is exact to within the time it takes to see the tick
+        final long start = System.currentTimeMillis();
+        long millis;
+        long nanoTime;
+        do {
+            nanoTime = System.nanoTime();
+            millis = System.currentTimeMillis();
+        } while (millis == start);
+        EPOCH_NANOS = millis * 1000000L;
+        EPOCH_NANO_TIME = nanoTime;
+    }
+
+    /**
+     * @return the wall clock time in nanoseconds since the epoch, comparable between processes on the same host.
+     */
+    static long epochNanos() {
+        return EPOCH_NANOS + (System.nanoTime() - EPOCH_NANO_TIME);
+    }
+
+    private static void storeFence() {
+        if (STORE_FENCE == null) {
+            fallbackFence = 0;
+            return;
+        }
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    private static void loadFence() {
+        if (LOAD_FENCE == null) {
+            final int ignored = fallbackFence;
+            return;
+        }
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+
+    private ChangeRing(RandomAccessFile file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Create a ring file. An existing file is replaced, not overwritten: processes that map it keep reading the old ring.
+     * @param capacity - The number of records the ring holds; rounded up to a power of two.
+     */
+    static ChangeRing create(String filename, int capacity) throws IOException {
+        if (capacity < 1 || capacity > MAX_CAPACITY) throw new IllegalArgumentException("capacity must be in [1, " + MAX_CAPACITY + "]");
+        final int slots = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        final File target = new File(filename).getAbsoluteFile();
+        // in the same directory, so the rename cannot cross file systems
+        final File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(temp, "rw");
+            final long length = HEADER_BYTES + (long) slots * SLOT_BYTES;
+            file.setLength(length);
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(4, VERSION).putInt(8, slots);
+            storeFence();
+            buffer.putInt(0, MAGIC);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ChangeRing(file, buffer, slots);
+        } catch (IOException | RuntimeException e) {
+            if (file != null) file.close();
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a ring file created by another process.
+     */
+    static ChangeRing open(String filename) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try {
+            final long length = file.length();
+            if (length < HEADER_BYTES) throw new IOException(filename + " is not a change ring of version " + VERSION);
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(filename + " is not a change ring of version " + VERSION);
+            }
+            loadFence();
+            final int capacity = buffer.getInt(8);
+            // slots are indexed with capacity - 1 as a mask, and must all lie inside the mapping
+            if (capacity < 1 || Integer.bitCount(capacity) != 1 || HEADER_BYTES + (long) capacity * SLOT_BYTES > length) {
+                throw new IOException(filename + " has a corrupt capacity " + capacity + " for its length " + length);
+            }
+            return new ChangeRing(file, buffer, capacity);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private int slotOf(long seq) {
+        return HEADER_BYTES + (int) (seq & mask) * SLOT_BYTES;
+    }
+
+    /**
+     * Write record `seq`. Each sequence number is written once, by the thread that claimed it.
+     */
+    void write(long seq, int op, int key) {
+        final int slot = slotOf(seq);
+        buffer.putLong(slot, 0);
+        storeFence();
+        buffer.putLong(slot + 8, ((long) op << 32) | (key & 0xffffffffL));
+        buffer.putLong(slot + 16, epochNanos());
+        storeFence();
+        buffer.putLong(slot, seq + 1);
+        // only for lag metrics, so a smaller value written by a slower thread does no harm
+        buffer.putLong(CLAIMED_OFFSET, seq + 1);
+    }
+
+    /**
+     * @return the number of records the writer had claimed at some recent point.
+     */
+    long getClaimed() {
+        return buffer.getLong(CLAIMED_OFFSET);
+    }
+
+    static final int NOT_READY = 0;
+    static final int READ = 1;
+    static final int LAPPED = -1;
+
+    /**
+     * Read record `seq` into out = {op << 32 | key, epochNanos}.
+     * @return READ, NOT_READY if it was not committed yet, or LAPPED if it was overwritten.
+     */
+    int read(long seq, long[] out) {
+        final int slot = slotOf(seq);
+        final long commit = buffer.getLong(slot);
+        if (commit != seq + 1) {
+            return commit > seq + 1 ? LAPPED : NOT_READY;
+        }
+        loadFence();
+        out[0] = buffer.getLong(slot + 8);
+        out[1] = buffer.getLong(slot + 16);
+        loadFence();
+        return buffer.getLong(slot) == seq + 1 ? READ : LAPPED;
+    }
+
+    void close() throws IOException {
+        file.close();
+    }
+}
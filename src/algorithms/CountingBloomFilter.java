@@ -0,0 +1,111 @@
+package algorithms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, blocked counting Bloom filter over int keys.
+ * Each key maps to one block of 128 4-bit counters (eight longs, about one cache line), and to k counters inside it,
+ * so a query touches a single block. Counters are updated with a CAS on the long that holds them.
+ * A counter that reaches 15 saturates and is never decremented again, so the filter has no false negatives,
+ * as long as every remove() matches an earlier add() of the same key.
+ */
+public final class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_LONG = 16;
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int COUNTERS_PER_BLOCK = COUNTERS_PER_LONG * LONGS_PER_BLOCK;
+    private static final long MAX_COUNT = 15;
+
+    private final AtomicLongArray counters;
+    private final int nblocks;
+    private final int k;
+
+    /**
+     * @param expectedKeys - The number of keys the filter is sized for.
+     * @param countersPerKey - Counters per expected key; 8 gives about 2-3% false positives.
+     */
+    public CountingBloomFilter(int expectedKeys, int countersPerKey) {
+        if (expectedKeys < 1) throw new IllegalArgumentException("expectedKeys must be > 0");
+        if (countersPerKey < 1) throw new IllegalArgumentException("countersPerKey must be > 0");
+        final long ncounters = (long) expectedKeys * countersPerKey;
+        this.nblocks = (int) Math.min(Integer.MAX_VALUE / LONGS_PER_BLOCK, (ncounters + COUNTERS_PER_BLOCK - 1) / COUNTERS_PER_BLOCK);
+        this.counters = new AtomicLongArray(nblocks * LONGS_PER_BLOCK);
+        // the number of hash functions that minimizes the false-positive rate
+        this.k = Math.max(1, Math.min(16, (int) Math.round(countersPerKey * Math.log(2))));
+    }
+
+    private static long hash(int key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /**
+     * The index of the first long of the key's block.
+     */
+    private int blockOf(long h) {
+        return (int) (((h >>> 32) * nblocks) >>> 32) * LONGS_PER_BLOCK;
+    }
+
+    /**
+     * The i-th counter of the key inside its block, by double hashing.
+     */
+    private static int counterOf(long h, int i) {
+        final int h1 = (int) h;
+        final int h2 = ((int) h >>> 16) | 1;
+        return (h1 + i * h2) & (COUNTERS_PER_BLOCK - 1);
+    }
+
+    /**
+     * @return false if the key was definitely never added (or was removed), true if it may be present.
+     */
+    public boolean mightContain(int key) {
+        final long h = hash(key);
+        final int block = blockOf(h);
+        for (int i = 0; i < k; i++) {
+            final int c = counterOf(h, i);
+            final int shift = (c % COUNTERS_PER_LONG) * 4;
+            if (((counters.get(block + c / COUNTERS_PER_LONG) >>> shift) & MAX_COUNT) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(int key) {
+        update(key, 1);
+    }
+
+    public void remove(int key) {
+        update(key, -1);
+    }
+
+    private void update(int key, int delta) {
+        final long h = hash(key);
+        final int block = blockOf(h);
+        for (int i = 0; i < k; i++) {
+            final int c = counterOf(h, i);
+            final int index = block + c / COUNTERS_PER_LONG;
+            final int shift = (c % COUNTERS_PER_LONG) * 4;
+            while (true) {
+                final long word = counters.get(index);
+                final long count = (word >>> shift) & MAX_COUNT;
+                if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                    break; // saturated counters stick
+                }
+                if (counters.compareAndSet(index, word, word + ((long) delta << shift))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The memory used by the counters, in bytes.
+     */
+    public long getBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+}
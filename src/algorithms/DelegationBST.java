@@ -0,0 +1,324 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import main.BSTInterface;
+
+/**
+ * A delegation-based set (in the style of ffwd and RCL): the key range is split between dedicated server threads,
+ * and each server owns a private, sequential tree that no other thread touches, so it needs no locks and its
+ * upper nodes stay in the server's cache. A client posts each operation into its own single-producer/single-consumer
+ * slot at the server that owns the key, and spins until the server writes the response back into the slot.
+ *
+ * Each client thread gets a record with one cache-line-padded slot per server. The record of a thread that died
+ * is reused by the next thread that registers, so short-lived threads do not slow down the servers' scans.
+ */
+public class DelegationBST implements BSTInterface, Closeable {
+
+    private static final int OP_CONTAINS = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_REMOVE = 2;
+    // How many empty polls a spinning thread makes before it yields the cpu
+    private static final int SPINS_BEFORE_YIELD = 256;
+    // How many empty scans a server makes before it starts parking between scans
+    private static final int SCANS_BEFORE_PARK = 1 << 16;
+    private static final long IDLE_PARK_NANOS = 50000;
+
+    // The fields of a slot are surrounded by a full cache line on both sides, so slots never share a line
+    static class SlotPadBefore {
+        long p0, p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class SlotFields extends SlotPadBefore {
+        // true while a request is posted and not yet served; the volatile write hands the slot over
+        volatile boolean pending;
+        int op;
+        int key;
+        boolean result;
+    }
+
+    static final class Slot extends SlotFields {
+        long q0, q1, q2, q3, q4, q5, q6, q7;
+    }
+
+    /**
+     * The slots of one client thread, one per server.
+     */
+    static final class ClientRecord {
+        volatile Thread owner;
+        final Slot[] slots;
+
+        ClientRecord(Thread owner, int nservers) {
+            this.owner = owner;
+            this.slots = new Slot[nservers];
+            for (int i = 0; i < nservers; i++) {
+                slots[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * A plain, unsynchronized BST. Only its server thread accesses it, except for size() and getKeysum()
+     * when the structure is quiescent.
+     */
+    static final class SequentialBST {
+        static final class Node {
+            int key;
+            Node left, right;
+
+            Node(int key) {
+                this.key = key;
+            }
+        }
+
+        private Node root;
+
+        boolean contains(int key) {
+            Node curr = root;
+            while (curr != null) {
+                if (curr.key < key) {
+                    curr = curr.right;
+                } else if (curr.key > key) {
+                    curr = curr.left;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean insert(int key) {
+            if (root == null) {
+                root = new Node(key);
+                return true;
+            }
+            Node curr = root;
+            while (true) {
+                if (curr.key < key) {
+                    if (curr.right == null) {
+                        curr.right = new Node(key);
+                        return true;
+                    }
+                    curr = curr.right;
+                } else if (curr.key > key) {
+                    if (curr.left == null) {
+                        curr.left = new Node(key);
+                        return true;
+                    }
+                    curr = curr.left;
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        boolean remove(int key) {
+            Node parent = null;
+            Node curr = root;
+            while (curr != null && curr.key != key) {
+                parent = curr;
+                curr = curr.key < key ? curr.right : curr.left;
+            }
+            if (curr == null) {
+                return false;
+            }
+            if (curr.left != null && curr.right != null) {
+                // Copy the successor's key here, and unlink the successor instead
+                Node succParent = curr;
+                Node succ = curr.right;
+                while (succ.left != null) {
+                    succParent = succ;
+                    succ = succ.left;
+                }
+                curr.key = succ.key;
+                if (succParent == curr) {
+                    succParent.right = succ.right;
+                } else {
+                    succParent.left = succ.right;
+                }
+                return true;
+            }
+            final Node child = curr.left != null ? curr.left : curr.right;
+            if (parent == null) {
+                root = child;
+            } else if (parent.left == curr) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+            return true;
+        }
+
+        int size(Node node) {
+            return node == null ? 0 : 1 + size(node.left) + size(node.right);
+        }
+
+        long keysum(Node node) {
+            return node == null ? 0 : (long) node.key + keysum(node.left) + keysum(node.right);
+        }
+    }
+
+    private final class Server extends Thread {
+        final int index;
+        final SequentialBST tree = new SequentialBST();
+
+        Server(int index) {
+            super("DelegationBST-server-" + index);
+            this.index = index;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idleScans = 0;
+            while (!closed) {
+                boolean served = false;
+                for (ClientRecord record : records) {
+                    final Slot slot = record.slots[index];
+                    if (slot.pending) {
+                        final int key = slot.key;
+                        if (slot.op == OP_INSERT) {
+                            slot.result = tree.insert(key);
+                        } else if (slot.op == OP_REMOVE) {
+                            slot.result = tree.remove(key);
+                        } else {
+                            slot.result = tree.contains(key);
+                        }
+                        slot.pending = false;
+                        served = true;
+                    }
+                }
+                if (served) {
+                    idleScans = 0;
+                } else if (++idleScans >= SCANS_BEFORE_PARK) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                } else if (idleScans % SPINS_BEFORE_YIELD == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private final Server[] servers;
+    private final int maxKey;
+    // Every client record ever created; replaced as a whole when it grows
+    private volatile ClientRecord[] records = new ClientRecord[0];
+    private final ThreadLocal<ClientRecord> record = new ThreadLocal<ClientRecord>() {
+        @Override
+        protected ClientRecord initialValue() {
+            return register();
+        }
+    };
+    private volatile boolean closed = false;
+
+    /**
+     * Create a tree whose key range [1, maxKey] is split evenly between nservers server threads.
+     * Keys outside the range are still accepted - they go to the first or the last server.
+     * @param nservers - The number of server threads.
+     * @param maxKey - The largest key expected in the workload.
+     */
+    public DelegationBST(int nservers, int maxKey) {
+        if (nservers < 1) throw new IllegalArgumentException("nservers must be > 0");
+        if (maxKey < 1) throw new IllegalArgumentException("maxKey must be > 0");
+        this.maxKey = maxKey;
+        this.servers = new Server[nservers];
+        for (int i = 0; i < nservers; i++) {
+            servers[i] = new Server(i);
+            servers[i].start();
+        }
+    }
+
+    /**
+     * Give the calling thread a client record: the record of a dead thread if there is one, or a new one.
+     */
+    private synchronized ClientRecord register() {
+        final Thread self = Thread.currentThread();
+        for (ClientRecord r : records) {
+            if (!r.owner.isAlive()) {
+                // Its owner always waited for its last response, so none of its slots is pending
+                r.owner = self;
+                return r;
+            }
+        }
+        final ClientRecord r = new ClientRecord(self, servers.length);
+        final ClientRecord[] grown = Arrays.copyOf(records, records.length + 1);
+        grown[records.length] = r;
+        records = grown;
+        return r;
+    }
+
+    private int serverOf(final int key) {
+        if (key <= 1) return 0;
+        if (key >= maxKey) return servers.length - 1;
+        return (int) ((long) (key - 1) * servers.length / maxKey);
+    }
+
+    private boolean delegate(final int op, final int key) {
+        if (closed) {
+            throw new IllegalStateException("DelegationBST is closed");
+        }
+        final Slot slot = record.get().slots[serverOf(key)];
+        slot.op = op;
+        slot.key = key;
+        slot.pending = true;
+        int spins = 0;
+        while (slot.pending) {
+            if (++spins % SPINS_BEFORE_YIELD == 0) {
+                Thread.yield();
+            }
+        }
+        return slot.result;
+    }
+
+    public final boolean contains(final int key) {
+        return delegate(OP_CONTAINS, key);
+    }
+
+    public final boolean insert(final int key) {
+        return delegate(OP_INSERT, key);
+    }
+
+    public final boolean remove(final int key) {
+        return delegate(OP_REMOVE, key);
+    }
+
+    /**
+     * Stop the server threads. Operations must not be running or started afterwards.
+     */
+    public void close() {
+        closed = true;
+        for (Server s : servers) {
+            try {
+                s.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public String getName() {
+        return "BST-delegation";
+    }
+
+    // Returns the size of the tree.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        int size = 0;
+        for (Server s : servers) {
+            size += s.tree.size(s.tree.root);
+        }
+        return size;
+    }
+
+    // Returns the sum of keys in the tree.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        long sum = 0;
+        for (Server s : servers) {
+            sum += s.tree.keysum(s.tree.root);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package algorithms;
+
+import java.util.concurrent.atomic.LongAdder;
+import main.BSTInterface;
+import main.Filtering;
+
+/**
+ * A decorator that puts a counting Bloom filter in front of a tree, so most lookups of absent keys
+ * are answered from a single filter block instead of a full-depth traversal of the tree.
+ *
+ * A key is added to the filter before it is inserted into the tree, and removed from the filter only after
+ * it was removed from the tree, so whenever a key is in the tree, the filter admits it.
+ */
+public class FilteredBST implements BSTInterface, Filtering {
+
+    public static final int DEFAULT_COUNTERS_PER_KEY = 8;
+
+    private final BSTInterface tree;
+    private final CountingBloomFilter filter;
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param tree - The tree that holds the keys.
+     * @param expectedKeys - The number of keys the filter is sized for.
+     * @param countersPerKey - Counters per expected key (4 bits each).
+     */
+    public FilteredBST(BSTInterface tree, int expectedKeys, int countersPerKey) {
+        this.tree = tree;
+        this.filter = new CountingBloomFilter(expectedKeys, countersPerKey);
+    }
+
+    public final boolean contains(final int key) {
+        if (!filter.mightContain(key)) {
+            filtered.increment();
+            return false;
+        }
+        if (tree.contains(key)) {
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    public final boolean insert(final int key) {
+        filter.add(key);
+        if (tree.insert(key)) {
+            return true;
+        }
+        // The key was already present, and so was its first add
+        filter.remove(key);
+        return false;
+    }
+
+    public final boolean remove(final int key) {
+        if (!filter.mightContain(key) || !tree.remove(key)) {
+            return false;
+        }
+        filter.remove(key);
+        return true;
+    }
+
+    public long getFilterBytes() {
+        return filter.getBytes();
+    }
+
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    public String getName() {
+        return tree.getName() + "-filtered";
+    }
+
+    public final int size() {
+        return tree.size();
+    }
+
+    public final long getKeysum() {
+        return tree.getKeysum();
+    }
+}
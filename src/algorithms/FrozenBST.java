@@ -0,0 +1,106 @@
+package algorithms;
+
+import java.util.function.IntConsumer;
+import main.BSTInterface;
+
+/**
+ * An immutable, read-optimized copy of a BST, for read-only phases of a workload.
+ * The keys are stored in a single int[] in Eytzinger (BFS) order: the children of keys[i] are keys[2i] and keys[2i + 1].
+ * A search touches one array slot per level with no pointer chasing and no volatile reads, the top levels share a
+ * few cache lines, and each step picks the next slot arithmetically instead of with a data-dependent branch.
+ *
+ * Since nothing is ever modified, contains() needs no synchronization at all. insert() and remove() are not supported;
+ * use thaw() to get a mutable tree again.
+ */
+public final class FrozenBST implements BSTInterface {
+
+    public static final String NAME = "BST-frozen";
+
+    // keys[0] is unused, so the root is at index 1
+    private final int[] keys;
+    private final int n;
+    private final long keysum;
+
+    /**
+     * @param sortedKeys - Distinct keys in ascending order.
+     */
+    FrozenBST(int[] sortedKeys) {
+        this.n = sortedKeys.length;
+        this.keys = new int[n + 1];
+        fill(sortedKeys, 0, 1);
+        long sum = 0;
+        for (int key : sortedKeys) {
+            sum += key;
+        }
+        this.keysum = sum;
+    }
+
+    /**
+     * Place the sorted keys in Eytzinger order, by an in-order walk of the implicit tree.
+     * @return the index of the next sorted key to place.
+     */
+    private int fill(int[] sortedKeys, int next, int index) {
+        if (index <= n) {
+            next = fill(sortedKeys, next, 2 * index);
+            keys[index] = sortedKeys[next++];
+            next = fill(sortedKeys, next, 2 * index + 1);
+        }
+        return next;
+    }
+
+    public boolean contains(final int key) {
+        int i = 1;
+        while (i <= n) {
+            // Go right iff keys[i] < key, using the sign bit of the difference instead of a branch
+            i = 2 * i + (int) (((long) keys[i] - key) >>> 63);
+        }
+        // Undo the right turns taken after the last left turn - that node is the smallest key >= the given key
+        i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+        return i != 0 && keys[i] == key;
+    }
+
+    public boolean insert(final int key) {
+        throw new UnsupportedOperationException("a frozen tree is immutable; thaw() it first");
+    }
+
+    public boolean remove(final int key) {
+        throw new UnsupportedOperationException("a frozen tree is immutable; thaw() it first");
+    }
+
+    /**
+     * Apply the consumer to every key in the tree, in ascending order.
+     */
+    final void forEachKey(IntConsumer consumer) {
+        forEachKey(1, consumer);
+    }
+
+    private void forEachKey(int index, IntConsumer consumer) {
+        if (index <= n) {
+            forEachKey(2 * index, consumer);
+            consumer.accept(keys[index]);
+            forEachKey(2 * index + 1, consumer);
+        }
+    }
+
+    /**
+     * Create a mutable, balanced BST with the same keys.
+     */
+    public BST thaw() {
+        final int[] sortedKeys = new int[n];
+        final int[] next = new int[1];
+        forEachKey(key -> sortedKeys[next[0]++] = key);
+        return BST.fromSorted(sortedKeys, 0, n);
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public long getKeysum() {
+        return keysum;
+    }
+}
@@ -0,0 +1,119 @@
+package algorithms;
+
+import main.BSTInterface;
+
+/**
+ * The lazy synchronization linked list (Herlihy and Shavit), used as a baseline for the BST.
+ * This is the list from old/LazyList.java, completed to implement BSTInterface.
+ * Keys Integer.MIN_VALUE and Integer.MAX_VALUE are reserved for the sentinels.
+ */
+public class LazyList implements BSTInterface {
+
+    static class Node {
+        public final int key; // key is immutable
+        public volatile Node next;
+        public volatile boolean marked; // marked for deletion
+
+        public Node(int key) {
+            this.key = key;
+            this.next = null;
+            this.marked = false;
+        }
+    }
+
+    /**
+     * The head of the list. It doesn't contain an item, and is always followed
+     * (eventually) by a tail sentinel with key Integer.MAX_VALUE.
+     */
+    final Node head;
+
+    public LazyList() {
+        head = new Node(Integer.MIN_VALUE);
+        head.next = new Node(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Validate that pred and curr are both unmarked and adjacent.
+     * The function should be called only when the locks over both nodes are held.
+     */
+    private boolean validate(Node pred, Node curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    public final boolean contains(final int key) {
+        Node curr = head;
+        while (curr.key < key) {
+            curr = curr.next;
+        }
+        return curr.key == key && !curr.marked;
+    }
+
+    public final boolean insert(final int key) {
+        while (true) {
+            Node pred = head;
+            Node curr = pred.next;
+            while (curr.key < key) {
+                pred = curr;
+                curr = curr.next;
+            }
+            synchronized (pred) {
+                synchronized (curr) {
+                    if (validate(pred, curr)) {
+                        if (curr.key == key) {
+                            return false;
+                        }
+                        Node node = new Node(key);
+                        node.next = curr;
+                        pred.next = node;
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    public final boolean remove(final int key) {
+        while (true) {
+            Node pred = head;
+            Node curr = pred.next;
+            while (curr.key < key) {
+                pred = curr;
+                curr = curr.next;
+            }
+            synchronized (pred) {
+                synchronized (curr) {
+                    if (validate(pred, curr)) {
+                        if (curr.key != key) {
+                            return false;
+                        }
+                        curr.marked = true;
+                        pred.next = curr.next;
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return "LazyList";
+    }
+
+    // Returns size of the list. Guaranteed to be called without concurrent operations.
+    public final int size() {
+        int size = 0;
+        for (Node curr = head.next; curr.key != Integer.MAX_VALUE; curr = curr.next) {
+            size++;
+        }
+        return size;
+    }
+
+    // Returns the sum of keys in the list. Guaranteed to be called without concurrent operations.
+    public final long getKeysum() {
+        long sum = 0;
+        for (Node curr = head.next; curr.key != Integer.MAX_VALUE; curr = curr.next) {
+            sum += curr.key;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,142 @@
+package algorithms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import main.BSTInterface;
+
+/**
+ * A lock-free trie over the four bytes of an int key, with a fixed fanout of 256.
+ * The three upper bytes index inner nodes (arrays of 256 children), and the lowest byte indexes a bit in a leaf
+ * bitmap of 256 bits, so every operation takes exactly four steps, whatever the insertion order, and a step is
+ * an array index computed from the key instead of a data-dependent comparison.
+ *
+ * Missing nodes are installed with a CAS, and a key is inserted or removed with a CAS on the word that holds its bit,
+ * which is the linearization point. Nodes are never removed, so the trie keeps the memory of every key range it held;
+ * it is meant for key sets that are dense in some ranges, where a leaf costs less than one bit per possible key plus
+ * its header.
+ */
+public class RadixTrie implements BSTInterface {
+
+    private static final int BITS = 8;
+    private static final int FANOUT = 1 << BITS;
+    private static final int MASK = FANOUT - 1;
+    private static final int LEAF_WORDS = FANOUT / 64;
+    // Keys are offset by SIGN so that unsigned order of the offset keys is the signed order of the keys
+    private static final int SIGN = 0x80000000;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>>> root =
+            new AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>>>(FANOUT);
+
+    private AtomicLongArray findLeaf(final int u) {
+        final AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> level1 = root.get(u >>> 24);
+        if (level1 == null) {
+            return null;
+        }
+        final AtomicReferenceArray<AtomicLongArray> level2 = level1.get((u >>> 16) & MASK);
+        if (level2 == null) {
+            return null;
+        }
+        return level2.get((u >>> 8) & MASK);
+    }
+
+    /**
+     * Find the leaf of the key, installing the missing nodes on its path.
+     */
+    private AtomicLongArray leafForUpdate(final int u) {
+        AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> level1 = root.get(u >>> 24);
+        if (level1 == null) {
+            root.compareAndSet(u >>> 24, null, new AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>>(FANOUT));
+            level1 = root.get(u >>> 24);
+        }
+        AtomicReferenceArray<AtomicLongArray> level2 = level1.get((u >>> 16) & MASK);
+        if (level2 == null) {
+            level1.compareAndSet((u >>> 16) & MASK, null, new AtomicReferenceArray<AtomicLongArray>(FANOUT));
+            level2 = level1.get((u >>> 16) & MASK);
+        }
+        AtomicLongArray leaf = level2.get((u >>> 8) & MASK);
+        if (leaf == null) {
+            level2.compareAndSet((u >>> 8) & MASK, null, new AtomicLongArray(LEAF_WORDS));
+            leaf = level2.get((u >>> 8) & MASK);
+        }
+        return leaf;
+    }
+
+    public final boolean contains(final int key) {
+        final int u = key ^ SIGN;
+        final AtomicLongArray leaf = findLeaf(u);
+        return leaf != null && (leaf.get((u & MASK) >>> 6) & (1L << u)) != 0;
+    }
+
+    public final boolean insert(final int key) {
+        final int u = key ^ SIGN;
+        final AtomicLongArray leaf = leafForUpdate(u);
+        final int index = (u & MASK) >>> 6;
+        final long bit = 1L << u;
+        while (true) {
+            final long word = leaf.get(index);
+            if ((word & bit) != 0) return false;
+            if (leaf.compareAndSet(index, word, word | bit)) return true;
+        }
+    }
+
+    public final boolean remove(final int key) {
+        final int u = key ^ SIGN;
+        final AtomicLongArray leaf = findLeaf(u);
+        if (leaf == null) {
+            return false;
+        }
+        final int index = (u & MASK) >>> 6;
+        final long bit = 1L << u;
+        while (true) {
+            final long word = leaf.get(index);
+            if ((word & bit) == 0) return false;
+            if (leaf.compareAndSet(index, word, word & ~bit)) return true;
+        }
+    }
+
+    /**
+     * Apply the consumer to every key in the trie, in ascending order.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    public final void forEachKey(IntConsumer consumer) {
+        for (int b0 = 0; b0 < FANOUT; b0++) {
+            final AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> level1 = root.get(b0);
+            if (level1 == null) continue;
+            for (int b1 = 0; b1 < FANOUT; b1++) {
+                final AtomicReferenceArray<AtomicLongArray> level2 = level1.get(b1);
+                if (level2 == null) continue;
+                for (int b2 = 0; b2 < FANOUT; b2++) {
+                    final AtomicLongArray leaf = level2.get(b2);
+                    if (leaf == null) continue;
+                    final int high = (b0 << 24) | (b1 << 16) | (b2 << 8);
+                    for (int w = 0; w < LEAF_WORDS; w++) {
+                        for (long word = leaf.get(w); word != 0; word &= word - 1) {
+                            consumer.accept((high | (w << 6) | Long.numberOfTrailingZeros(word)) ^ SIGN);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return "RadixTrie";
+    }
+
+    // Returns the size of the trie.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        final int[] size = new int[1];
+        forEachKey(key -> size[0]++);
+        return size[0];
+    }
+
+    // Returns the sum of keys in the trie.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        final long[] sum = new long[1];
+        forEachKey(key -> sum[0] += key);
+        return sum[0];
+    }
+}
@@ -0,0 +1,122 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import main.BSTInterface;
+import main.OpTape;
+
+/**
+ * A decorator that records every operation performed on a tree into a trace file,
+ * in the format read by OpTape.mapTrace, so production traffic can be replayed by the harness.
+ * Every thread appends to its own buffer, and full buffers are written to the file as one chunk,
+ * so the trace keeps each thread's order but interleaves threads at chunk granularity.
+ */
+public class RecordingBST implements BSTInterface, Closeable {
+
+    private static final int CHUNK_RECORDS = 8192;
+
+    private final BSTInterface tree;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(); // every thread's buffer, guarded by this
+    private long count = 0; // records written to the file so far, guarded by this
+
+    private final ThreadLocal<ByteBuffer> buffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            final ByteBuffer b = ByteBuffer.allocateDirect(CHUNK_RECORDS * OpTape.RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            synchronized (RecordingBST.this) {
+                buffers.add(b);
+            }
+            return b;
+        }
+    };
+
+    /**
+     * @param tree - The tree that performs the operations.
+     * @param filename - The trace file to create (an existing file is overwritten).
+     */
+    public RecordingBST(BSTInterface tree, String filename) throws IOException {
+        this.tree = tree;
+        this.file = new RandomAccessFile(filename, "rw");
+        this.file.setLength(0);
+        this.channel = file.getChannel();
+        writeHeader();
+    }
+
+    private void record(final int op, final int key) {
+        final ByteBuffer b = buffer.get();
+        b.putInt(op).putInt(key);
+        if (!b.hasRemaining()) {
+            flush(b);
+        }
+    }
+
+    private synchronized void flush(ByteBuffer b) {
+        b.flip();
+        try {
+            final long position = OpTape.HEADER_BYTES + count * OpTape.RECORD_BYTES;
+            count += b.remaining() / OpTape.RECORD_BYTES;
+            for (long p = position; b.hasRemaining(); ) {
+                p += channel.write(b, p);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        b.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(OpTape.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(OpTape.MAGIC).putInt(OpTape.VERSION).putLong(count).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    public final boolean contains(final int key) {
+        record(OpTape.OP_CONTAINS, key);
+        return tree.contains(key);
+    }
+
+    public final boolean insert(final int key) {
+        record(OpTape.OP_INSERT, key);
+        return tree.insert(key);
+    }
+
+    public final boolean remove(final int key) {
+        record(OpTape.OP_REMOVE, key);
+        return tree.remove(key);
+    }
+
+    /**
+     * Write out all buffered records and finish the trace file.
+     * Must be called when no thread is performing operations on the tree.
+     */
+    public synchronized void close() throws IOException {
+        for (ByteBuffer b : buffers) {
+            if (b.position() > 0) flush(b);
+        }
+        writeHeader();
+        file.close();
+    }
+
+    public String getName() {
+        return tree.getName();
+    }
+
+    public final int size() {
+        return tree.size();
+    }
+
+    public final long getKeysum() {
+        return tree.getKeysum();
+    }
+}
@@ -0,0 +1,161 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import main.BSTInterface;
+
+/**
+ * A read-only replica of a ReplicatedBST, possibly in another process on the same host.
+ * A daemon thread tails the primary's change ring from its first record and applies each change to a local BST,
+ * which serves contains() without any communication with the primary. The replica starts empty, so it must be
+ * created before the primary has published more changes than its ring holds.
+ *
+ * If the follower falls more than a ring's capacity behind, the changes it missed are lost; it stops applying
+ * changes and isOverrun() returns true.
+ */
+public class ReplicaFollower implements BSTInterface, Closeable {
+
+    // How many empty polls the follower makes before it yields the cpu, and before it parks between polls
+    private static final int SPINS_BEFORE_YIELD = 256;
+    private static final int POLLS_BEFORE_PARK = 1 << 16;
+    private static final long IDLE_PARK_NANOS = 50000;
+
+    private final BST tree = new BST();
+    private final ChangeRing ring;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private volatile boolean overrun = false;
+    // Only written by the follower thread
+    private volatile long applied = 0;
+    private volatile long lastLagNanos = 0;
+    private volatile long maxLagNanos = 0;
+    private volatile long totalLagNanos = 0;
+
+    /**
+     * Open the ring file of a primary and start following it.
+     * @param filename - The ring file created by the primary.
+     */
+    public ReplicaFollower(String filename) throws IOException {
+        this.ring = ChangeRing.open(filename);
+        this.thread = new Thread("ReplicaFollower-" + filename) {
+            @Override
+            public void run() {
+                follow();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void follow() {
+        final long[] record = new long[2];
+        int idlePolls = 0;
+        while (!closed) {
+            final int status = ring.read(applied, record);
+            if (status == ChangeRing.READ) {
+                final int key = (int) record[0];
+                if ((int) (record[0] >>> 32) == ChangeRing.OP_INSERT) {
+                    tree.insert(key);
+                } else {
+                    tree.remove(key);
+                }
+                // both timestamps are wall clock times, since the primary may be another process
+                final long lag = ChangeRing.epochNanos() - record[1];
+                lastLagNanos = lag;
+                totalLagNanos += lag;
+                if (lag > maxLagNanos) maxLagNanos = lag;
+                applied++;
+                idlePolls = 0;
+            } else if (status == ChangeRing.LAPPED) {
+                overrun = true;
+                return;
+            } else if (++idlePolls >= POLLS_BEFORE_PARK) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (idlePolls % SPINS_BEFORE_YIELD == 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Wait until the replica has applied the given number of changes.
+     * @return false if it did not get there within the timeout, or it was overrun.
+     */
+    public boolean awaitApplied(long count, long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (applied < count) {
+            if (overrun || System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /** The number of changes applied to the replica so far. **/
+    public long getAppliedCount() {
+        return applied;
+    }
+
+    /** About how many changes the primary has published that the replica has not applied yet. **/
+    public long getLagRecords() {
+        return Math.max(0, ring.getClaimed() - applied);
+    }
+
+    /** The time between the publication and the application of the latest change, in nanoseconds. **/
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    public long getTotalLagNanos() {
+        return totalLagNanos;
+    }
+
+    public boolean isOverrun() {
+        return overrun;
+    }
+
+    public final boolean contains(final int key) {
+        return tree.contains(key);
+    }
+
+    public final boolean insert(final int key) {
+        throw new UnsupportedOperationException("a replica is read-only");
+    }
+
+    public final boolean remove(final int key) {
+        throw new UnsupportedOperationException("a replica is read-only");
+    }
+
+    /**
+     * Stop following the primary. The replica can still be read.
+     */
+    public void close() throws IOException {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ring.close();
+    }
+
+    public String getName() {
+        return "BST-replica";
+    }
+
+    // Returns the size of the replica; only exact when no changes are being applied.
+    public final int size() {
+        return tree.size();
+    }
+
+    // Returns the sum of keys in the replica; only exact when no changes are being applied.
+    public final long getKeysum() {
+        return tree.getKeysum();
+    }
+}
@@ -0,0 +1,116 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import main.BSTInterface;
+
+/**
+ * A primary BST that publishes every successful insert and remove to a memory-mapped change ring,
+ * so ReplicaFollowers in other processes on the same host can keep read-only replicas of the set.
+ *
+ * Updates of the same key are serialized by a striped lock around the tree update and its publication,
+ * so the ring orders them like the tree does. Updates of different keys may appear in either order,
+ * which does not change the set they lead to.
+ */
+public class ReplicatedBST implements BSTInterface, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    private static final int STRIPE_BITS = 10;
+
+    private final BST tree = new BST();
+    private final ChangeRing ring;
+    private final String filename;
+    private final Object[] stripes = new Object[1 << STRIPE_BITS];
+    private final AtomicLong next = new AtomicLong();
+    private final List<ReplicaFollower> followers = new CopyOnWriteArrayList<ReplicaFollower>();
+
+    /**
+     * Create an empty primary.
+     * @param filename - The ring file to create (an existing file is overwritten).
+     * @param capacity - The number of changes the ring holds; a follower that falls further behind loses its replica.
+     */
+    public ReplicatedBST(String filename, int capacity) throws IOException {
+        this.ring = ChangeRing.create(filename, capacity);
+        this.filename = filename;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    private Object stripeOf(final int key) {
+        return stripes[(key * 0x9E3779B9) >>> (32 - STRIPE_BITS)];
+    }
+
+    public final boolean contains(final int key) {
+        return tree.contains(key);
+    }
+
+    public final boolean insert(final int key) {
+        synchronized (stripeOf(key)) {
+            if (!tree.insert(key)) {
+                return false;
+            }
+            ring.write(next.getAndIncrement(), ChangeRing.OP_INSERT, key);
+            return true;
+        }
+    }
+
+    public final boolean remove(final int key) {
+        synchronized (stripeOf(key)) {
+            if (!tree.remove(key)) {
+                return false;
+            }
+            ring.write(next.getAndIncrement(), ChangeRing.OP_REMOVE, key);
+            return true;
+        }
+    }
+
+    /**
+     * The number of changes published so far.
+     */
+    public long getPublishedCount() {
+        return next.get();
+    }
+
+    /**
+     * Start a follower of this primary in the current process, which is closed with the primary.
+     * Followers in other processes are created with new ReplicaFollower(filename) instead.
+     */
+    public ReplicaFollower follow() throws IOException {
+        final ReplicaFollower follower = new ReplicaFollower(filename);
+        followers.add(follower);
+        return follower;
+    }
+
+    /**
+     * The followers started by follow().
+     */
+    public List<ReplicaFollower> getFollowers() {
+        return followers;
+    }
+
+    /**
+     * Close the followers started by follow(), and the ring. Updates must not be running or started afterwards.
+     */
+    public void close() throws IOException {
+        for (ReplicaFollower f : followers) {
+            f.close();
+        }
+        ring.close();
+    }
+
+    public String getName() {
+        return "BST-replicated";
+    }
+
+    public final int size() {
+        return tree.size();
+    }
+
+    public final long getKeysum() {
+        return tree.getKeysum();
+    }
+}
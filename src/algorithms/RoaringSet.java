@@ -0,0 +1,450 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+import main.BSTInterface;
+
+/**
+ * A concurrent, compressed set of ints in the style of Roaring bitmaps, for dense key ranges.
+ * The key space is split into chunks of 2^16 keys, indexed by their high 16 bits through a two-level radix index.
+ * Each chunk holds a container chosen by its density:
+ *  - an array container: up to ARRAY_MAX_SIZE sorted low halves, updated in place under the container's write lock,
+ *    and read optimistically (see ArrayContainer);
+ *  - a bitmap container: 2^16 bits, updated lock-free by a CAS on the word that holds the key's bit;
+ *  - a run container: sorted runs of consecutive keys, produced by optimize() and immutable.
+ * A dense chunk costs 1 bit per possible key instead of a node object per key, and its keys are scanned and summed
+ * a word at a time.
+ *
+ * A container that is replaced (array to bitmap when it grows, run to bitmap on its first update) is marked retired
+ * under its lock, before the index points to its replacement. Updates check the mark under the lock, and lock-free
+ * lookups re-check it after reading the container; either starts over from the index if it was set.
+ */
+public class RoaringSet implements BSTInterface {
+
+    // Keys are offset by SIGN so that unsigned order of the offset keys is the signed order of the keys
+    private static final int SIGN = 0x80000000;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int LOW_MASK = CHUNK_SIZE - 1;
+    private static final int INDEX_BITS = 8; // each level of the index resolves 8 of the 16 high bits
+    private static final int INDEX_SIZE = 1 << INDEX_BITS;
+    // An array container holds at most this many keys (8KB, the size of a bitmap)
+    static final int ARRAY_MAX_SIZE = 4096;
+
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int RETRY = -1; // the container was retired - look it up again
+
+    abstract static class Container {
+        volatile boolean retired;
+
+        abstract boolean contains(int low);
+
+        /** @return TRUE, FALSE or RETRY **/
+        abstract int insert(RoaringSet set, int chunk, int low);
+
+        /** @return TRUE, FALSE or RETRY **/
+        abstract int remove(int low);
+
+        abstract int cardinality();
+
+        abstract int runCount();
+
+        /** Apply the consumer to every low half in the container, in ascending order **/
+        abstract void forEach(IntConsumer consumer);
+
+        abstract long sum();
+    }
+
+    /**
+     * Updates shift the keys in place, and only allocate when the array is full.
+     * Lookups do not lock: they search the array optimistically, and search again if an update ran meanwhile.
+     * The write lock is also the lock that retires the container.
+     */
+    static final class ArrayContainer extends Container {
+        final StampedLock lock = new StampedLock();
+        // the sorted low halves are values[0, size); written under the write lock, read optimistically
+        char[] values;
+        int size;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+            this.size = values.length;
+        }
+
+        boolean contains(int low) {
+            final long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                final char[] v = values;
+                // an update may be shifting the keys, so the search only counts if the stamp is still valid
+                final boolean found = Arrays.binarySearch(v, 0, Math.min(size, v.length), (char) low) >= 0;
+                if (lock.validate(stamp)) return found;
+            }
+            final long read = lock.readLock();
+            try {
+                return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+            } finally {
+                lock.unlockRead(read);
+            }
+        }
+
+        int insert(RoaringSet set, int chunk, int low) {
+            final long stamp = lock.writeLock();
+            try {
+                if (retired) return RETRY;
+                final int index = Arrays.binarySearch(values, 0, size, (char) low);
+                if (index >= 0) return FALSE;
+                final int at = -index - 1;
+                if (size == ARRAY_MAX_SIZE) {
+                    final BitmapContainer bitmap = new BitmapContainer();
+                    for (int i = 0; i < size; i++) bitmap.set(values[i]);
+                    bitmap.set(low);
+                    set.replace(chunk, this, bitmap);
+                    return TRUE;
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, Math.max(4, size + (size >> 1))));
+                }
+                System.arraycopy(values, at, values, at + 1, size - at);
+                values[at] = (char) low;
+                size++;
+                return TRUE;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int remove(int low) {
+            final long stamp = lock.writeLock();
+            try {
+                if (retired) return RETRY;
+                final int at = Arrays.binarySearch(values, 0, size, (char) low);
+                if (at < 0) return FALSE;
+                System.arraycopy(values, at + 1, values, at, size - at - 1);
+                size--;
+                return TRUE;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int cardinality() {
+            return size;
+        }
+
+        int runCount() {
+            final char[] v = values;
+            int runs = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || v[i] != v[i - 1] + 1) runs++;
+            }
+            return runs;
+        }
+
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < size; i++) consumer.accept(values[i]);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < size; i++) sum += values[i];
+            return sum;
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+        final AtomicLongArray words = new AtomicLongArray(CHUNK_SIZE / 64);
+
+        /** Set a bit of a container that is not yet shared **/
+        void set(int low) {
+            words.lazySet(low >>> 6, words.get(low >>> 6) | (1L << low));
+        }
+
+        boolean contains(int low) {
+            return (words.get(low >>> 6) & (1L << low)) != 0;
+        }
+
+        int insert(RoaringSet set, int chunk, int low) {
+            final int index = low >>> 6;
+            final long bit = 1L << low;
+            while (true) {
+                final long word = words.get(index);
+                if ((word & bit) != 0) return FALSE;
+                if (words.compareAndSet(index, word, word | bit)) return TRUE;
+            }
+        }
+
+        int remove(int low) {
+            final int index = low >>> 6;
+            final long bit = 1L << low;
+            while (true) {
+                final long word = words.get(index);
+                if ((word & bit) == 0) return FALSE;
+                if (words.compareAndSet(index, word, word & ~bit)) return TRUE;
+            }
+        }
+
+        int cardinality() {
+            int count = 0;
+            for (int i = 0; i < words.length(); i++) count += Long.bitCount(words.get(i));
+            return count;
+        }
+
+        int runCount() {
+            int runs = 0;
+            long previous = 0;
+            for (int i = 0; i < words.length(); i++) {
+                final long word = words.get(i);
+                // a run starts at every set bit whose lower neighbour is clear
+                runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+            return runs;
+        }
+
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < words.length(); i++) {
+                for (long word = words.get(i); word != 0; word &= word - 1) {
+                    consumer.accept(i * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < words.length(); i++) {
+                final long word = words.get(i);
+                sum += (long) Long.bitCount(word) * i * 64;
+                for (long w = word; w != 0; w &= w - 1) sum += Long.numberOfTrailingZeros(w);
+            }
+            return sum;
+        }
+    }
+
+    static final class RunContainer extends Container {
+        // pairs of (first low half, number of keys - 1) of each run, in ascending order; immutable
+        final char[] runs;
+
+        RunContainer(char[] runs) {
+            this.runs = runs;
+        }
+
+        boolean contains(int low) {
+            int lo = 0;
+            int hi = runs.length / 2 - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int start = runs[2 * mid];
+                if (low < start) {
+                    hi = mid - 1;
+                } else if (low > start + runs[2 * mid + 1]) {
+                    lo = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Runs are immutable, so an update first replaces the container by a bitmap.
+         */
+        private synchronized void toBitmap(RoaringSet set, int chunk) {
+            if (retired) return;
+            final BitmapContainer bitmap = new BitmapContainer();
+            forEach(bitmap::set);
+            set.replace(chunk, this, bitmap);
+        }
+
+        int insert(RoaringSet set, int chunk, int low) {
+            if (contains(low)) return retired ? RETRY : FALSE;
+            toBitmap(set, chunk);
+            return RETRY;
+        }
+
+        int remove(int low) {
+            // only called through RoaringSet.remove, which converts the container first
+            throw new UnsupportedOperationException();
+        }
+
+        int cardinality() {
+            int count = 0;
+            for (int i = 1; i < runs.length; i += 2) count += runs[i] + 1;
+            return count;
+        }
+
+        int runCount() {
+            return runs.length / 2;
+        }
+
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < runs.length; i += 2) {
+                for (int v = runs[i]; v <= runs[i] + runs[i + 1]; v++) consumer.accept(v);
+            }
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < runs.length; i += 2) {
+                final long first = runs[i], count = runs[i + 1] + 1;
+                sum += count * first + count * (count - 1) / 2;
+            }
+            return sum;
+        }
+    }
+
+    // index.get(chunk >>> INDEX_BITS).get(chunk & (INDEX_SIZE - 1)) is the container of a chunk, or null
+    private final AtomicReferenceArray<AtomicReferenceArray<Container>> index =
+            new AtomicReferenceArray<AtomicReferenceArray<Container>>(INDEX_SIZE);
+
+    private Container containerOf(int chunk) {
+        final AtomicReferenceArray<Container> leaf = index.get(chunk >>> INDEX_BITS);
+        return leaf == null ? null : leaf.get(chunk & (INDEX_SIZE - 1));
+    }
+
+    /**
+     * Get the container of a chunk, creating an empty array container if there is none.
+     */
+    private Container containerForUpdate(int chunk) {
+        AtomicReferenceArray<Container> leaf = index.get(chunk >>> INDEX_BITS);
+        if (leaf == null) {
+            index.compareAndSet(chunk >>> INDEX_BITS, null, new AtomicReferenceArray<Container>(INDEX_SIZE));
+            leaf = index.get(chunk >>> INDEX_BITS);
+        }
+        final int slot = chunk & (INDEX_SIZE - 1);
+        final Container c = leaf.get(slot);
+        if (c != null) return c;
+        leaf.compareAndSet(slot, null, new ArrayContainer(new char[0]));
+        return leaf.get(slot);
+    }
+
+    /**
+     * Retire a container and point the index to its replacement. The caller holds the old container's lock.
+     */
+    void replace(int chunk, Container old, Container replacement) {
+        old.retired = true;
+        index.get(chunk >>> INDEX_BITS).set(chunk & (INDEX_SIZE - 1), replacement);
+    }
+
+    public final boolean contains(final int key) {
+        final int u = key ^ SIGN;
+        while (true) {
+            final Container c = containerOf(u >>> CHUNK_BITS);
+            if (c == null) return false;
+            final boolean result = c.contains(u & LOW_MASK);
+            if (!c.retired) return result;
+        }
+    }
+
+    public final boolean insert(final int key) {
+        final int u = key ^ SIGN;
+        while (true) {
+            final Container c = containerForUpdate(u >>> CHUNK_BITS);
+            final int result = c.insert(this, u >>> CHUNK_BITS, u & LOW_MASK);
+            if (result != RETRY) return result == TRUE;
+        }
+    }
+
+    public final boolean remove(final int key) {
+        final int u = key ^ SIGN;
+        while (true) {
+            final Container c = containerOf(u >>> CHUNK_BITS);
+            if (c == null) return false;
+            if (c instanceof RunContainer) {
+                if (!c.contains(u & LOW_MASK)) {
+                    if (!c.retired) return false;
+                    continue;
+                }
+                ((RunContainer) c).toBitmap(this, u >>> CHUNK_BITS);
+                continue;
+            }
+            final int result = c.remove(u & LOW_MASK);
+            if (result != RETRY) return result == TRUE;
+        }
+    }
+
+    /**
+     * Replace every container by the smallest representation of its keys, and drop empty chunks.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    public final void optimize() {
+        for (int chunk = 0; chunk < CHUNK_SIZE; chunk++) {
+            final Container c = containerOf(chunk);
+            if (c == null) continue;
+            final int cardinality = c.cardinality();
+            final int runs = c.runCount();
+            final Container best;
+            if (cardinality == 0) {
+                best = null;
+            } else if (4 * runs < Math.min(2 * cardinality, CHUNK_SIZE / 8)) {
+                final char[] r = new char[2 * runs];
+                final int[] n = { -1 };
+                c.forEach(v -> {
+                    if (n[0] >= 0 && r[2 * n[0]] + r[2 * n[0] + 1] + 1 == v) {
+                        r[2 * n[0] + 1]++;
+                    } else {
+                        n[0]++;
+                        r[2 * n[0]] = (char) v;
+                    }
+                });
+                best = new RunContainer(r);
+            } else if (cardinality <= ARRAY_MAX_SIZE) {
+                final char[] values = new char[cardinality];
+                final int[] n = { 0 };
+                c.forEach(v -> values[n[0]++] = (char) v);
+                best = new ArrayContainer(values);
+            } else if (c instanceof BitmapContainer) {
+                continue;
+            } else {
+                final BitmapContainer bitmap = new BitmapContainer();
+                c.forEach(bitmap::set);
+                best = bitmap;
+            }
+            replace(chunk, c, best);
+        }
+    }
+
+    /**
+     * Apply the consumer to every key in the set, in ascending order.
+     * Like size() and getKeysum(), this must only be called when there are no concurrent operations.
+     */
+    public final void forEachKey(IntConsumer consumer) {
+        for (int chunk = 0; chunk < CHUNK_SIZE; chunk++) {
+            final Container c = containerOf(chunk);
+            if (c == null) continue;
+            final int high = chunk << CHUNK_BITS;
+            c.forEach(low -> consumer.accept((high | low) ^ SIGN));
+        }
+    }
+
+    public String getName() {
+        return "RoaringSet";
+    }
+
+    // Returns the size of the set.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        int size = 0;
+        for (int chunk = 0; chunk < CHUNK_SIZE; chunk++) {
+            final Container c = containerOf(chunk);
+            if (c != null) size += c.cardinality();
+        }
+        return size;
+    }
+
+    // Returns the sum of keys in the set, a container at a time.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        long sum = 0;
+        for (int chunk = 0; chunk < CHUNK_SIZE; chunk++) {
+            final Container c = containerOf(chunk);
+            if (c == null) continue;
+            final long high = (long) ((chunk << CHUNK_BITS) ^ SIGN);
+            sum += high * c.cardinality() + c.sum();
+        }
+        return sum;
+    }
+}
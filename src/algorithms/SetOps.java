@@ -0,0 +1,457 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel set algebra between BSTs, run on the common fork/join pool.
+ *
+ * The operations that build a new tree work on the sorted keys of their inputs. Each input is flattened in parallel:
+ * a first pass counts the keys of the subtrees near the root, and a second pass writes every subtree at its offset.
+ * The merge works the same way: the larger side is split at its middle key, that key is binary searched in the
+ * smaller side, the halves are counted in parallel, and then written in parallel into one array.
+ * The result is linked into a balanced tree directly (also in parallel), instead of being inserted key by key.
+ * Every step does O(n) work, and no key is copied more than once per step.
+ * The in-place operations apply the difference between the trees with parallel inserts or removes,
+ * so they only do work proportional to the keys that actually change.
+ *
+ * Unless stated otherwise, the input trees must not be modified while an operation runs.
+ */
+public final class SetOps {
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+    // Below this many keys, a task merges (or applies) sequentially instead of forking
+    private static final int SEQUENTIAL_THRESHOLD = 8192;
+    // Subtrees at this depth or deeper are flattened by a single task
+    private static final int FORK_DEPTH = 10;
+
+    private SetOps() {
+    }
+
+    /**
+     * The result of each operation has the mode of a (see BST.augmented() and BST.lazy()).
+     * @return a new balanced tree with the keys that are in a or in b.
+     */
+    public static BST union(BST a, BST b) {
+        return combine(UNION, a, b);
+    }
+
+    /**
+     * @return a new balanced tree with the keys that are in both a and b.
+     */
+    public static BST intersection(BST a, BST b) {
+        return combine(INTERSECTION, a, b);
+    }
+
+    /**
+     * @return a new balanced tree with the keys that are in a but not in b.
+     */
+    public static BST difference(BST a, BST b) {
+        return combine(DIFFERENCE, a, b);
+    }
+
+    /**
+     * Insert every key of source into target, in parallel.
+     * Only source must be quiescent - target may be used concurrently, and each insert is linearizable on its own.
+     */
+    public static void unionInto(BST target, BST source) {
+        apply(target, toSortedArray(source), true);
+    }
+
+    /**
+     * Remove from target every key of source, in parallel.
+     * Only source must be quiescent - target may be used concurrently, and each remove is linearizable on its own.
+     */
+    public static void differenceInto(BST target, BST source) {
+        apply(target, toSortedArray(source), false);
+    }
+
+    /**
+     * Remove from target every key that is not in other, in parallel.
+     */
+    public static void intersectInto(BST target, BST other) {
+        apply(target, merge(DIFFERENCE, toSortedArray(target), toSortedArray(other)), false);
+    }
+
+    /**
+     * Split a tree around a key, by cutting the search path of the key. This takes time proportional to the depth
+     * of the tree, and no node is copied.
+     * The given tree is consumed - it is left empty, and its nodes are moved to the result, which has its mode.
+     * @return {a tree with the keys smaller than key, a tree with the keys greater than or equal to key}.
+     * @throws IllegalArgumentException if the tree is versioned - relinking its nodes would change its snapshots.
+     */
+    public static BST[] split(BST tree, int key) {
+        if (tree.isVersioned()) {
+            throw new IllegalArgumentException("cannot split a versioned tree");
+        }
+        final BST less = tree.emptyCopy();
+        final BST rest = tree.emptyCopy();
+        final BST.Node[] parts = split(tree.head.right, key);
+        tree.head.right = tree.sentinel;
+        less.head.right = parts[0];
+        rest.head.right = parts[1];
+        return new BST[] { less, rest };
+    }
+
+    private static BST.Node[] split(BST.Node root, int key) {
+        if (root == null) {
+            return new BST.Node[] { null, null };
+        }
+        if (root.key < key) {
+            final BST.Node[] parts = split(root.right, key);
+            root.right = parts[0];
+            recount(root);
+            parts[0] = root;
+            return parts;
+        } else {
+            final BST.Node[] parts = split(root.left, key);
+            root.left = parts[1];
+            recount(root);
+            parts[1] = root;
+            return parts;
+        }
+    }
+
+    /**
+     * Join two trees, where every key of left is smaller than every key of right. The minimum of right becomes the
+     * new root, so this takes time proportional to the depth of right, and no node is copied.
+     * Both trees are consumed - they are left empty, and their nodes are moved to the result, which has the mode of left.
+     * @return a tree with the keys of both trees.
+     * @throws IllegalArgumentException if either tree is versioned - relinking its nodes would change its snapshots.
+     */
+    public static BST join(BST left, BST right) {
+        if (left.isVersioned() || right.isVersioned()) {
+            throw new IllegalArgumentException("cannot join versioned trees");
+        }
+        final BST result = left.emptyCopy();
+        BST.Node leftRoot = left.head.right;
+        BST.Node rightRoot = right.head.right;
+        left.head.right = left.sentinel;
+        right.head.right = right.sentinel;
+        if (leftRoot == null || rightRoot == null) {
+            result.head.right = leftRoot != null ? leftRoot : rightRoot;
+            return result;
+        }
+        BST.Node max = leftRoot;
+        while (max.right != null) {
+            max = max.right;
+        }
+
+        // Detach the minimum of right, remembering the path to it to fix its aggregates
+        final ArrayList<BST.Node> path = new ArrayList<BST.Node>();
+        BST.Node parent = null;
+        BST.Node min = rightRoot;
+        while (min.left != null) {
+            path.add(min);
+            parent = min;
+            min = min.left;
+        }
+        if (max.key >= min.key) {
+            throw new IllegalArgumentException("the keys of left must be smaller than the keys of right");
+        }
+        if (parent == null) {
+            rightRoot = min.right;
+        } else {
+            parent.left = min.right;
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recount(path.get(i));
+        }
+        min.left = leftRoot;
+        min.right = rightRoot;
+        recount(min);
+        result.head.right = min;
+        return result;
+    }
+
+    /**
+     * Recompute the aggregates of a node of an augmented tree from its children, after they were relinked.
+     */
+    private static void recount(BST.Node node) {
+        if (node instanceof BST.AugNode) {
+            final BST.AugNode aug = (BST.AugNode) node;
+            aug.count = (node.deleted ? 0 : 1) + countOf(node.left) + countOf(node.right);
+            aug.sum = (node.deleted ? 0 : node.key) + sumOf(node.left) + sumOf(node.right);
+        }
+    }
+
+    private static int countOf(BST.Node node) {
+        return node == null ? 0 : ((BST.AugNode) node).count;
+    }
+
+    private static long sumOf(BST.Node node) {
+        return node == null ? 0 : ((BST.AugNode) node).sum;
+    }
+
+    private static BST combine(int op, BST a, BST b) {
+        final int[] keys = merge(op, toSortedArray(a), toSortedArray(b));
+        return BST.fromSorted(a.emptyCopy(), keys, 0, keys.length);
+    }
+
+    /**
+     * @return the keys of a quiescent tree in ascending order, flattened in parallel.
+     */
+    private static int[] toSortedArray(BST tree) {
+        final CountTask counted = new CountTask(tree.head.right, 0);
+        ForkJoinPool.commonPool().invoke(counted);
+        final int[] keys = new int[counted.count];
+        ForkJoinPool.commonPool().invoke(new WriteTask(counted, keys, 0));
+        return keys;
+    }
+
+    private static int[] merge(int op, int[] a, int[] b) {
+        final MergeTask counted = new MergeTask(op, a, 0, a.length, b, 0, b.length);
+        ForkJoinPool.commonPool().invoke(counted);
+        final int[] keys = new int[counted.count];
+        ForkJoinPool.commonPool().invoke(new MergeWriteTask(counted, keys, 0));
+        return keys;
+    }
+
+    /**
+     * Counts the keys of a subtree. Above FORK_DEPTH, the subtrees of the node are counted by their own tasks,
+     * which are kept, so WriteTask can hand each of them its offset.
+     */
+    private static final class CountTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final BST.Node node;
+        private final int depth;
+        CountTask left, right; // null if the subtree was counted by this task alone
+        int count;
+
+        CountTask(BST.Node node, int depth) {
+            this.node = node;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (node == null || depth >= FORK_DEPTH) {
+                count = countSequential(node);
+                return;
+            }
+            left = new CountTask(node.left, depth + 1);
+            right = new CountTask(node.right, depth + 1);
+            invokeAll(left, right);
+            count = left.count + (node.deleted ? 0 : 1) + right.count;
+        }
+
+        private static int countSequential(BST.Node node) {
+            return node == null ? 0 : countSequential(node.left) + (node.deleted ? 0 : 1) + countSequential(node.right);
+        }
+    }
+
+    /**
+     * Writes the keys of a counted subtree in ascending order, starting at keys[offset].
+     */
+    private static final class WriteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CountTask counted;
+        private final int[] keys;
+        private final int offset;
+
+        WriteTask(CountTask counted, int[] keys, int offset) {
+            this.counted = counted;
+            this.keys = keys;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            if (counted.left == null) {
+                writeSequential(counted.node, keys, offset);
+                return;
+            }
+            int mid = offset + counted.left.count;
+            if (!counted.node.deleted) {
+                keys[mid++] = counted.node.key;
+            }
+            invokeAll(new WriteTask(counted.left, keys, offset), new WriteTask(counted.right, keys, mid));
+        }
+
+        /** @return the offset after the subtree's keys **/
+        private static int writeSequential(BST.Node node, int[] keys, int offset) {
+            if (node == null) {
+                return offset;
+            }
+            offset = writeSequential(node.left, keys, offset);
+            if (!node.deleted) {
+                keys[offset++] = node.key;
+            }
+            return writeSequential(node.right, keys, offset);
+        }
+    }
+
+    private static void apply(BST target, int[] keys, boolean insert) {
+        ForkJoinPool.commonPool().invoke(new ApplyTask(target, keys, 0, keys.length, insert));
+    }
+
+    /**
+     * Counts the keys of the merge of the sorted ranges a[aFrom, aTo) and b[bFrom, bTo).
+     * Large ranges are split into halves that are counted by their own tasks, which are kept,
+     * so MergeWriteTask can hand each of them its offset.
+     */
+    private static final class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int op;
+        private final int[] a;
+        private final int aFrom, aTo;
+        private final int[] b;
+        private final int bFrom, bTo;
+        MergeTask left, right; // null if the ranges are merged by this task alone
+        int count;
+
+        MergeTask(int op, int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+            this.op = op;
+            this.a = a;
+            this.aFrom = aFrom;
+            this.aTo = aTo;
+            this.b = b;
+            this.bFrom = bFrom;
+            this.bTo = bTo;
+        }
+
+        @Override
+        protected void compute() {
+            final int aLength = aTo - aFrom;
+            final int bLength = bTo - bFrom;
+            if (aLength + bLength <= SEQUENTIAL_THRESHOLD || aLength == 0 || bLength == 0) {
+                count = mergeSequential(null, 0);
+                return;
+            }
+            // Split the larger range at its middle key, and the smaller one at the same key,
+            // so every key of the left halves is smaller than every key of the right halves
+            final int aMid, bMid;
+            if (aLength >= bLength) {
+                aMid = (aFrom + aTo) >>> 1;
+                bMid = lowerBound(b, bFrom, bTo, a[aMid]);
+            } else {
+                bMid = (bFrom + bTo) >>> 1;
+                aMid = lowerBound(a, aFrom, aTo, b[bMid]);
+            }
+            left = new MergeTask(op, a, aFrom, aMid, b, bFrom, bMid);
+            right = new MergeTask(op, a, aMid, aTo, b, bMid, bTo);
+            invokeAll(left, right);
+            count = left.count + right.count;
+        }
+
+        /**
+         * Merge the ranges into out, starting at out[offset], or only count the merged keys if out is null.
+         * @return the number of merged keys
+         */
+        int mergeSequential(int[] out, int offset) {
+            final boolean write = out != null;
+            int i = aFrom, j = bFrom, n = offset;
+            while (i < aTo && j < bTo) {
+                if (a[i] < b[j]) {
+                    if (op != INTERSECTION) {
+                        if (write) out[n] = a[i];
+                        n++;
+                    }
+                    i++;
+                } else if (a[i] > b[j]) {
+                    if (op == UNION) {
+                        if (write) out[n] = b[j];
+                        n++;
+                    }
+                    j++;
+                } else {
+                    if (op != DIFFERENCE) {
+                        if (write) out[n] = a[i];
+                        n++;
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            if (op != INTERSECTION) {
+                if (write) System.arraycopy(a, i, out, n, aTo - i);
+                n += aTo - i;
+            }
+            if (op == UNION) {
+                if (write) System.arraycopy(b, j, out, n, bTo - j);
+                n += bTo - j;
+            }
+            return n - offset;
+        }
+    }
+
+    /**
+     * Writes the merge counted by a MergeTask, starting at out[offset].
+     */
+    private static final class MergeWriteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final MergeTask counted;
+        private final int[] out;
+        private final int offset;
+
+        MergeWriteTask(MergeTask counted, int[] out, int offset) {
+            this.counted = counted;
+            this.out = out;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            if (counted.left == null) {
+                counted.mergeSequential(out, offset);
+                return;
+            }
+            invokeAll(new MergeWriteTask(counted.left, out, offset),
+                      new MergeWriteTask(counted.right, out, offset + counted.left.count));
+        }
+    }
+
+    /**
+     * @return the index of the first key in keys[from, to) that is not smaller than key.
+     */
+    private static int lowerBound(int[] keys, int from, int to, int key) {
+        while (from < to) {
+            final int mid = (from + to) >>> 1;
+            if (keys[mid] < key) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Inserts or removes the keys in keys[from, to). Each leaf task handles a contiguous run of sorted keys,
+     * so its successive operations traverse mostly the same path, and different tasks mostly touch different subtrees.
+     */
+    private static final class ApplyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BST tree;
+        private final int[] keys;
+        private final int from, to;
+        private final boolean insert;
+
+        ApplyTask(BST tree, int[] keys, int from, int to, boolean insert) {
+            this.tree = tree;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.insert = insert;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD / 8) {
+                for (int i = from; i < to; i++) {
+                    if (insert) {
+                        tree.insert(keys[i]);
+                    } else {
+                        tree.remove(keys[i]);
+                    }
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new ApplyTask(tree, keys, from, mid, insert), new ApplyTask(tree, keys, mid, to, insert));
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package algorithms;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import main.BSTInterface;
+
+/**
+ * A front end that range-partitions the key space across several independent BSTs.
+ * Every operation is routed to the shard that owns its key, so threads that work on
+ * different key ranges never read the same upper nodes or contend on the same monitors.
+ *
+ * A daemon thread adapts the partitioning to the load of the last rebalance interval while operations run:
+ * it retires the shards it rebuilds, waits until the operations inside them are done, and publishes a new
+ * routing table. Operations that find their shard retired wait for the new table and route again.
+ */
+public class ShardedBST implements BSTInterface, Closeable {
+
+    public static final long DEFAULT_REBALANCE_MS = 100;
+
+    /**
+     * A single partition of the key space.
+     * It holds every key in [low, low of the next shard).
+     */
+    static final class Shard {
+        public final int low;
+        public final BST tree;
+        // Sampled number of operations routed to this shard, used to find hot partitions
+        public final LongAdder hits;
+        // Set once rebalance() replaces the shard; operations that see it go back to the routing table
+        volatile boolean retired;
+        // The number of operations inside the shard, striped by thread (a slot per cache line)
+        final AtomicLongArray active = new AtomicLongArray(STRIPES * PAD);
+
+        public Shard(int low, BST tree) {
+            this.low = low;
+            this.tree = tree;
+            this.hits = new LongAdder();
+        }
+
+        /**
+         * Wait until no operation is inside the shard. Called after setting `retired`.
+         */
+        void awaitInactive() {
+            for (int i = 0; i < STRIPES; i++) {
+                while (active.get(i * PAD) != 0) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    /**
+     * About 1 in 64 operations is counted, chosen at random per thread.
+     * This keeps the hit counters off the hot path while still tracking skew.
+     */
+    private static final int SAMPLE_MASK = 63;
+    /**
+     * A shard is split only if it received at least this many times the average load.
+     */
+    private static final int HOT_FACTOR = 2;
+    /**
+     * Below this many sampled operations in an interval, the load is too noisy to act on.
+     */
+    private static final long MIN_SAMPLES = 256;
+    private static final int STRIPES = 64;
+    private static final int PAD = 16; // longs per cache-line pair
+
+    /**
+     * The routing table, sorted by `low`. The first shard always starts at Integer.MIN_VALUE.
+     * It is replaced as a whole by rebalance(), never modified in place.
+     */
+    private volatile Shard[] shards;
+    private final Thread rebalancer;
+    private volatile boolean closed = false;
+
+    /**
+     * Create a tree whose key range [1, maxKey] is split evenly between nshards shards,
+     * rebalanced every DEFAULT_REBALANCE_MS milliseconds.
+     */
+    public ShardedBST(int nshards, int maxKey) {
+        this(nshards, maxKey, DEFAULT_REBALANCE_MS);
+    }
+
+    /**
+     * Create a tree whose key range [1, maxKey] is split evenly between nshards shards.
+     * Keys outside the range are still accepted - they go to the first or the last shard.
+     * @param nshards - The number of shards.
+     * @param maxKey - The largest key expected in the workload.
+     * @param rebalanceMillis - How often the partitioning is adapted to the load; 0 to only rebalance on request.
+     */
+    public ShardedBST(int nshards, int maxKey, final long rebalanceMillis) {
+        if (nshards < 1) throw new IllegalArgumentException("nshards must be > 0");
+        if (maxKey < 1) throw new IllegalArgumentException("maxKey must be > 0");
+        nshards = Math.min(nshards, maxKey);
+        final long width = ((long) maxKey + nshards - 1) / nshards;
+        Shard[] table = new Shard[nshards];
+        table[0] = new Shard(Integer.MIN_VALUE, new BST());
+        for (int i = 1; i < nshards; i++) {
+            table[i] = new Shard((int) (1 + i * width), new BST());
+        }
+        shards = table;
+        if (rebalanceMillis > 0) {
+            rebalancer = new Thread("ShardedBST-rebalancer") {
+                @Override
+                public void run() {
+                    try {
+                        while (!closed) {
+                            Thread.sleep(rebalanceMillis);
+                            rebalance();
+                        }
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                }
+            };
+            rebalancer.setDaemon(true);
+            rebalancer.start();
+        } else {
+            rebalancer = null;
+        }
+    }
+
+    /**
+     * Find the shard that owns the given key, using a binary search over the routing table.
+     * @param key - The key to route.
+     */
+    private static Shard shardFor(final Shard[] table, final int key) {
+        int lo = 0;
+        int hi = table.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (table[mid].low <= key) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return table[lo];
+    }
+
+    private static int stripe() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+    }
+
+    /**
+     * Enter the shard that owns the key, waiting out a rebalance of that shard. Must be followed by exit().
+     */
+    private Shard enter(final int key, final int stripe) {
+        while (true) {
+            final Shard[] table = shards;
+            final Shard shard = shardFor(table, key);
+            shard.active.getAndIncrement(stripe);
+            if (!shard.retired) {
+                if ((ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0) {
+                    shard.hits.increment();
+                }
+                return shard;
+            }
+            shard.active.getAndDecrement(stripe);
+            while (shards == table) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void exit(final Shard shard, final int stripe) {
+        shard.active.getAndDecrement(stripe);
+    }
+
+    public final boolean contains(final int key) {
+        final int stripe = stripe();
+        final Shard shard = enter(key, stripe);
+        try {
+            return shard.tree.contains(key);
+        } finally {
+            exit(shard, stripe);
+        }
+    }
+
+    public final boolean insert(final int key) {
+        final int stripe = stripe();
+        final Shard shard = enter(key, stripe);
+        try {
+            return shard.tree.insert(key);
+        } finally {
+            exit(shard, stripe);
+        }
+    }
+
+    public final boolean remove(final int key) {
+        final int stripe = stripe();
+        final Shard shard = enter(key, stripe);
+        try {
+            return shard.tree.remove(key);
+        } finally {
+            exit(shard, stripe);
+        }
+    }
+
+    /**
+     * Adapt the partitioning to the load observed since the previous call.
+     * If one shard received at least HOT_FACTOR times the average load, it is split at its median key,
+     * and the coldest pair of neighbouring shards is merged so the number of shards stays the same.
+     * Operations on the three shards involved wait while their keys are moved; other shards are not affected.
+     * Called periodically by the rebalancer thread, and may be called concurrently with operations.
+     * @return true if the partitioning changed, false otherwise.
+     */
+    public final synchronized boolean rebalance() {
+        final Shard[] table = shards;
+        try {
+            return rebalance(table);
+        } finally {
+            // Every interval is judged on its own load
+            for (Shard shard : shards) {
+                shard.hits.reset();
+            }
+        }
+    }
+
+    private boolean rebalance(final Shard[] table) {
+        final int n = table.length;
+        if (n < 3) {
+            return false;
+        }
+        final long[] hits = new long[n];
+        long total = 0;
+        int hot = 0;
+        for (int i = 0; i < n; i++) {
+            hits[i] = table[i].hits.sum();
+            total += hits[i];
+            if (hits[i] > hits[hot]) hot = i;
+        }
+        final long average = total / n;
+        if (total < MIN_SAMPLES || hits[hot] < HOT_FACTOR * average) {
+            return false;
+        }
+
+        // The coldest neighbouring pair that does not include the hot shard
+        int cold = -1;
+        for (int i = 0; i + 1 < n; i++) {
+            if (i == hot || i + 1 == hot) continue;
+            if (cold == -1 || hits[i] + hits[i + 1] < hits[cold] + hits[cold + 1]) cold = i;
+        }
+        if (cold == -1 || hits[cold] + hits[cold + 1] > average) {
+            return false;
+        }
+
+        // From here on, operations on the shards involved wait for the new table
+        for (Shard shard : new Shard[] {table[hot], table[cold], table[cold + 1]}) {
+            shard.retired = true;
+            shard.awaitInactive();
+        }
+        final int[] hotKeys = table[hot].tree.toSortedArray();
+        if (hotKeys.length < 2) {
+            // Too few keys to split: put the same trees back in fresh shards
+            final Shard[] same = table.clone();
+            for (int i : new int[] {hot, cold, cold + 1}) {
+                same[i] = new Shard(table[i].low, table[i].tree);
+            }
+            shards = same;
+            return false;
+        }
+        final int mid = hotKeys.length / 2;
+
+        final List<Shard> result = new ArrayList<Shard>(n);
+        for (int i = 0; i < n; i++) {
+            if (i == hot) {
+                result.add(new Shard(table[i].low, BST.fromSorted(hotKeys, 0, mid)));
+                result.add(new Shard(hotKeys[mid], BST.fromSorted(hotKeys, mid, hotKeys.length)));
+            } else if (i == cold) {
+                final int[] left = table[i].tree.toSortedArray();
+                final int[] right = table[i + 1].tree.toSortedArray();
+                final int[] merged = Arrays.copyOf(left, left.length + right.length);
+                System.arraycopy(right, 0, merged, left.length, right.length);
+                result.add(new Shard(table[i].low, BST.fromSorted(merged, 0, merged.length)));
+                i++;
+            } else {
+                result.add(table[i]); // in-flight operations keep using the same gate
+            }
+        }
+        shards = result.toArray(new Shard[n]);
+        return true;
+    }
+
+    /**
+     * Stop the rebalancer thread. The tree can still be used, without rebalancing.
+     */
+    public void close() {
+        closed = true;
+        if (rebalancer != null) {
+            rebalancer.interrupt();
+            try {
+                rebalancer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The number of shards currently in use.
+     */
+    public final int getShardCount() {
+        return shards.length;
+    }
+
+    public String getName() {
+        return "BST-sharded";
+    }
+
+    // Returns the size of the tree, counting the shards in parallel.
+    public final int size() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        return (int) Arrays.stream(shards).parallel().mapToLong(shard -> shard.tree.size()).sum();
+    }
+
+    // Returns the sum of keys in the tree, summing the shards in parallel.
+    public final long getKeysum() {
+    // NOTE: Guaranteed to be called without concurrent operations.
+        return Arrays.stream(shards).parallel().mapToLong(shard -> shard.tree.getKeysum()).sum();
+    }
+}
@@ -0,0 +1,43 @@
+package algorithms;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import main.BSTInterface;
+
+/**
+ * The JDK's ConcurrentSkipListSet behind BSTInterface, used as a reference implementation.
+ * Keys are boxed, so the harness measures it with the JDK's own allocation costs included.
+ */
+public class SkipListSet implements BSTInterface {
+
+    private final ConcurrentSkipListSet<Integer> set = new ConcurrentSkipListSet<Integer>();
+
+    public final boolean contains(final int key) {
+        return set.contains(key);
+    }
+
+    public final boolean insert(final int key) {
+        return set.add(key);
+    }
+
+    public final boolean remove(final int key) {
+        return set.remove(key);
+    }
+
+    public String getName() {
+        return "SkipList";
+    }
+
+    // Guaranteed to be called without concurrent operations.
+    public final int size() {
+        return set.size();
+    }
+
+    // Guaranteed to be called without concurrent operations.
+    public final long getKeysum() {
+        long sum = 0;
+        for (int key : set) {
+            sum += key;
+        }
+        return sum;
+    }
+}
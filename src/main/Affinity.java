@@ -0,0 +1,228 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * CPU topology discovery and thread pinning on Linux, without native code.
+ * The topology is read from sysfs, and a thread pins itself by resolving its own
+ * kernel thread id through /proc/thread-self and running taskset on it.
+ */
+public class Affinity {
+
+    public enum Policy { NONE, COMPACT, SCATTER, SOCKET }
+
+    /** A logical CPU (hardware thread) and where it lives. **/
+    public static final class Cpu {
+        public final int id, core, socket;
+        public Cpu(int id, int core, int socket) {
+            this.id = id;
+            this.core = core;
+            this.socket = socket;
+        }
+    }
+
+    private static final String SYSFS_CPU = "/sys/devices/system/cpu/";
+    private static volatile boolean warned = false;
+
+    public final Policy policy;
+    public final int socket; // only used by the SOCKET policy
+    private final List<Cpu> cpus;      // all logical CPUs, by id
+    private final List<Cpu> placement; // the order in which worker threads are assigned CPUs
+
+    public Affinity(Policy policy, int socket) {
+        this.policy = policy;
+        this.socket = socket;
+        this.cpus = readTopology();
+        this.placement = computePlacement();
+        if (policy != Policy.NONE && placement.isEmpty()) {
+            throw new RuntimeException("no CPUs available for affinity policy " + this);
+        }
+    }
+
+    /** parses "compact", "scatter" or "socketN" (case-insensitive). **/
+    public static Affinity parse(String s) {
+        s = s.toLowerCase();
+        if (s.equals("none")) return new Affinity(Policy.NONE, 0);
+        if (s.equals("compact")) return new Affinity(Policy.COMPACT, 0);
+        if (s.equals("scatter")) return new Affinity(Policy.SCATTER, 0);
+        if (s.matches("socket[0-9]+")) return new Affinity(Policy.SOCKET, Integer.parseInt(s.substring("socket".length())));
+        throw new IllegalArgumentException("unknown affinity policy \"" + s + "\"");
+    }
+
+    public int getPhysicalCoreCount() {
+        int count = 0;
+        for (int i=0;i<cpus.size();i++) {
+            if (firstSibling(cpus.get(i))) count++;
+        }
+        return count;
+    }
+
+    public Cpu getCpu(int id) {
+        for (Cpu c : cpus) if (c.id == id) return c;
+        return new Cpu(id, id, 0);
+    }
+
+    /**
+     * Pin the calling thread according to the policy.
+     * @param index - The index of the worker thread (0 .. nthreads-1).
+     * @return the id of the CPU the thread was pinned to, or -1 if it was not pinned.
+     */
+    public int pinCurrentThread(int index) {
+        if (policy == Policy.NONE) return -1;
+        final Cpu cpu = placement.get(index % placement.size());
+        try {
+            final String tid = new File("/proc/thread-self").getCanonicalFile().getName();
+            final Process p = new ProcessBuilder("taskset", "-p", "-c", String.valueOf(cpu.id), tid)
+                    .redirectErrorStream(true).start();
+            drain(p.getInputStream());
+            if (p.waitFor() != 0) throw new IOException("taskset exited with status " + p.exitValue());
+            return cpu.id;
+        } catch (Exception e) {
+            if (!warned) {
+                warned = true;
+                System.out.println("WARNING: could not pin thread to cpu " + cpu.id + " (" + e.getMessage() + "); running unpinned");
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The CPU the calling thread last ran on, read from /proc/thread-self/stat.
+     * @return the CPU id, or -1 if it cannot be determined.
+     */
+    public static int currentCpu() {
+        try {
+            final String stat = readLine(new File("/proc/thread-self/stat"));
+            // the command name may contain spaces, so count fields from the closing parenthesis
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Integer.parseInt(fields[36]); // field 39 ("processor") of the stat line
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private List<Cpu> computePlacement() {
+        final List<Cpu> result = new ArrayList<Cpu>();
+        switch (policy) {
+            case NONE:
+                break;
+            case SOCKET:
+                for (Cpu c : sortedCompact()) if (c.socket == socket) result.add(c);
+                break;
+            case COMPACT:
+                // fill the hardware threads of one core, then the next core, then the next socket
+                result.addAll(sortedCompact());
+                break;
+            case SCATTER: {
+                // one thread per physical core, alternating sockets, before using any sibling hyperthreads
+                final List<Cpu> sorted = sortedCompact();
+                final List<List<Cpu>> bySocket = new ArrayList<List<Cpu>>();
+                for (int round=0;round<2;round++) {
+                    bySocket.clear();
+                    for (Cpu c : sorted) {
+                        if (firstSibling(c) != (round == 0)) continue;
+                        while (bySocket.size() <= c.socket) bySocket.add(new ArrayList<Cpu>());
+                        bySocket.get(c.socket).add(c);
+                    }
+                    for (int i=0;;i++) {
+                        boolean any = false;
+                        for (List<Cpu> l : bySocket) {
+                            if (i < l.size()) { result.add(l.get(i)); any = true; }
+                        }
+                        if (!any) break;
+                    }
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    private List<Cpu> sortedCompact() {
+        final List<Cpu> sorted = new ArrayList<Cpu>(cpus);
+        Collections.sort(sorted, new Comparator<Cpu>() {
+            public int compare(Cpu a, Cpu b) {
+                if (a.socket != b.socket) return Integer.compare(a.socket, b.socket);
+                if (a.core != b.core) return Integer.compare(a.core, b.core);
+                return Integer.compare(a.id, b.id);
+            }
+        });
+        return sorted;
+    }
+
+    /** true if c is the lowest-numbered hardware thread of its physical core **/
+    private boolean firstSibling(Cpu c) {
+        for (Cpu o : cpus) {
+            if (o.socket == c.socket && o.core == c.core && o.id < c.id) return false;
+        }
+        return true;
+    }
+
+    private static List<Cpu> readTopology() {
+        final List<Cpu> result = new ArrayList<Cpu>();
+        try {
+            for (int id : parseCpuList(readLine(new File(SYSFS_CPU + "online")))) {
+                final String dir = SYSFS_CPU + "cpu" + id + "/topology/";
+                result.add(new Cpu(id,
+                        Integer.parseInt(readLine(new File(dir + "core_id")).trim()),
+                        Integer.parseInt(readLine(new File(dir + "physical_package_id")).trim())));
+            }
+        } catch (Exception e) {
+            // no sysfs (not Linux?): treat every processor as its own core on socket 0
+            result.clear();
+            for (int id=0;id<Runtime.getRuntime().availableProcessors();id++) result.add(new Cpu(id, id, 0));
+        }
+        return result;
+    }
+
+    /** parses a kernel cpu list such as "0-3,8-11" **/
+    static List<Integer> parseCpuList(String s) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (String range : s.trim().split(",")) {
+            final String[] bounds = range.split("-");
+            final int lo = Integer.parseInt(bounds[0]);
+            final int hi = bounds.length > 1 ? Integer.parseInt(bounds[1]) : lo;
+            for (int i=lo;i<=hi;i++) ids.add(i);
+        }
+        return ids;
+    }
+
+    private static String readLine(File f) throws IOException {
+        final BufferedReader r = new BufferedReader(new FileReader(f));
+        try { return r.readLine(); } finally { r.close(); }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        final byte[] buf = new byte[256];
+        while (in.read(buf) >= 0);
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return policy == Policy.SOCKET ? "socket" + socket : policy.name().toLowerCase();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import algorithms.BST;
+
+/**
+ * Compares a plain BST with an augmented one: the cost of maintaining the subtree aggregates on updates,
+ * against the speedup of rank/select/range queries. Both trees get the same keys and the same queries.
+ * For the update overhead under contention, run the harness with -alg-BST,BST-augmented.
+ */
+public class AggregateBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: AggregateBenchmark NODES MAXKEY QUERIES [RANGE_WIDTH (default MAXKEY/100)] [SEED]");
+            System.exit(-1);
+        }
+        final int nodes = Integer.parseInt(args[0]);
+        final int maxKey = Integer.parseInt(args[1]);
+        final int queries = Integer.parseInt(args[2]);
+        final int width = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, maxKey / 100);
+        final int seed = args.length > 4 ? Integer.parseInt(args[4]) : Globals.DEFAULT_SEED;
+        if (nodes > maxKey) {
+            System.out.println("NODES must be at most MAXKEY");
+            System.exit(-1);
+        }
+
+        final BST[] trees = { new BST(), BST.augmented() };
+        final String[] names = { "plain", "augmented" };
+        final long[] check = new long[trees.length];
+        System.out.println("tree,insertNsPerOp,removeNsPerOp,rankNsPerQuery,selectNsPerQuery,rangeSumNsPerQuery");
+        for (int t = 0; t < trees.length; t++) {
+            final BST tree = trees[t];
+            Random rng = new Random(seed);
+            long start = System.nanoTime();
+            for (int i = 0; i < nodes; ) {
+                if (tree.insert(rng.nextNatural(maxKey))) i++;
+            }
+            final double insertNs = (System.nanoTime() - start) / (double) nodes;
+
+            // remove and re-insert a tenth of the keys, which also exercises the successor relocation
+            rng = new Random(seed + 1);
+            final int[] removed = new int[Math.max(1, nodes / 10)];
+            int nremoved = 0;
+            start = System.nanoTime();
+            while (nremoved < removed.length && nodes > 0) {
+                final int key = rng.nextNatural(maxKey);
+                if (tree.remove(key)) removed[nremoved++] = key;
+            }
+            final double removeNs = (System.nanoTime() - start) / (double) Math.max(1, nremoved);
+            for (int i = 0; i < nremoved; i++) tree.insert(removed[i]);
+
+            rng = new Random(seed + 2);
+            long sink = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sink += tree.rank(rng.nextNatural(maxKey));
+            final double rankNs = (System.nanoTime() - start) / (double) queries;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) sink += tree.select(rng.nextNatural(Math.max(1, nodes))).orElse(0);
+            final double selectNs = (System.nanoTime() - start) / (double) queries;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                final int lo = rng.nextNatural(maxKey);
+                sink += tree.rangeSum(lo, (int) Math.min(Integer.MAX_VALUE, (long) lo + width));
+            }
+            final double rangeSumNs = (System.nanoTime() - start) / (double) queries;
+            check[t] = sink;
+            System.out.println(names[t] + "," + insertNs + "," + removeNs + "," + rankNs + "," + selectNs + "," + rangeSumNs);
+        }
+        if (check[0] != check[1]) {
+            System.out.println("ERROR: the plain and the augmented tree answered the queries differently");
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import algorithms.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * Registry of the data structures the harness can benchmark, keyed by (case-insensitive) name.
+ * It holds the built-in implementations plus any BSTFactory found through ServiceLoader.
+ */
+public class Algorithms {
+
+    private static final TreeMap<String, BSTFactory> factories = new TreeMap<String, BSTFactory>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        register(new BSTFactory() {
+            public String getName() { return "BST"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new BST(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-augmented"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return BST.augmented(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-bounded"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int capacity = (int) switches.get("capacity");
+                return new BoundedBST(capacity > 0 ? capacity : Math.max(1, maxKey / 10));
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-buffered"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int batchSize = (int) switches.get("buffer");
+                final double staleMs = switches.get("stale");
+                return new BufferedBST(new BST(), batchSize > 0 ? batchSize : BufferedBST.DEFAULT_BATCH_SIZE,
+                        (long) ((staleMs > 0 ? staleMs : BufferedBST.DEFAULT_MAX_DELAY_MS) * 1e6));
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-delegation"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int nservers = (int) switches.get("servers");
+                return new DelegationBST(nservers > 0 ? nservers : Math.max(1, Main.RAW_NUMBER_OF_PROCESSORS / 4), maxKey);
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-filtered"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                // sized for a full key range, the largest the tree can grow
+                final int countersPerKey = (int) switches.get("filter");
+                return new FilteredBST(new BST(), maxKey, countersPerKey > 0 ? countersPerKey : FilteredBST.DEFAULT_COUNTERS_PER_KEY);
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-lazy"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return BST.lazy(); }
+        });
+        register(new BSTFactory() {
+            // a primary publishing to a ring file, followed by a replica in the same process to measure the lag
+            public String getName() { return "BST-replicated"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int capacity = (int) switches.get("ring");
+                try {
+                    String filename = switches.getString("replica");
+                    if (filename == null) {
+                        final File file = File.createTempFile("bst-replica", ".ring");
+                        file.deleteOnExit();
+                        filename = file.getPath();
+                    }
+                    final ReplicatedBST primary = new ReplicatedBST(filename, capacity > 0 ? capacity : ReplicatedBST.DEFAULT_CAPACITY);
+                    primary.follow();
+                    return primary;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-sharded"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int nshards = (int) switches.get("shards");
+                final boolean rebalanceSet = switches.get("rebalance") > 0;
+                return new ShardedBST(nshards > 0 ? nshards : Main.RAW_NUMBER_OF_PROCESSORS, maxKey,
+                        rebalanceSet ? (long) switches.get("rebalance-ms") : ShardedBST.DEFAULT_REBALANCE_MS);
+            }
+        });
+        register(new BSTFactory() {
+            // a live BST that the harness freezes after prefilling; only for read-only mixes
+            public String getName() { return FrozenBST.NAME; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new BST(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BST-snapshot"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return BST.versioned(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "BLinkTree"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) {
+                final int fanout = (int) switches.get("fanout");
+                return new BLinkTree(fanout > 0 ? fanout : BLinkTree.DEFAULT_FANOUT);
+            }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "LazyList"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new LazyList(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "RadixTrie"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new RadixTrie(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "RoaringSet"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new RoaringSet(); }
+        });
+        register(new BSTFactory() {
+            public String getName() { return "SkipList"; }
+            public BSTInterface create(int maxKey, Main.SwitchMap switches) { return new SkipListSet(); }
+        });
+        for (BSTFactory f : ServiceLoader.load(BSTFactory.class)) {
+            register(f);
+        }
+    }
+
+    public static void register(BSTFactory factory) {
+        factories.put(factory.getName(), factory);
+    }
+
+    /** @return the factory registered under the given name, or null if there is none **/
+    public static BSTFactory get(String name) {
+        return factories.get(name);
+    }
+
+    public static List<String> getNames() {
+        final List<String> names = new ArrayList<String>();
+        for (BSTFactory f : factories.values()) names.add(f.getName());
+        return names;
+    }
+}
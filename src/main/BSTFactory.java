@@ -0,0 +1,32 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Creates fresh instances of one BSTInterface implementation for the harness.
+ * Implementations outside this package can be registered by listing the factory class in
+ * META-INF/services/main.BSTFactory on the classpath; they need a public no-argument constructor.
+ */
+public interface BSTFactory {
+    /** the name used to select the implementation with -alg-NAME **/
+    public String getName();
+    /** creates an empty data structure for keys in [1, maxKey] **/
+    public BSTInterface create(final int maxKey, final Main.SwitchMap switches);
+}
@@ -0,0 +1,38 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Implemented by data structures that return from updates before applying them, and apply them later in batches.
+ * The harness uses it to report how stale the structure was, and to account for updates that turned out differently
+ * when applied than what they returned, when it validates the key checksum.
+ */
+public interface Buffering {
+    /** number of buffered updates applied since the structure was created **/
+    public long getAppliedCount();
+    /** total time the applied updates spent in a buffer, in nanoseconds **/
+    public long getStalenessNanos();
+    /** longest time an applied update spent in a buffer, in nanoseconds **/
+    public long getMaxStalenessNanos();
+    /** number of applied updates that returned true but found nothing to change when applied **/
+    public long getMispredictedCount();
+    /** sum of the keys in the structure minus the sum implied by the results its updates returned **/
+    public long getKeysumCorrection();
+}
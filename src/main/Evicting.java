@@ -0,0 +1,32 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Implemented by data structures that drop keys by themselves once they reach a capacity.
+ * The harness uses it to report evictions, and to account for evicted keys when it validates the key checksum.
+ */
+public interface Evicting {
+    public int getCapacity();
+    /** number of keys evicted since the structure was created **/
+    public long getEvictionCount();
+    /** sum of the keys evicted since the structure was created **/
+    public long getEvictedKeysum();
+}
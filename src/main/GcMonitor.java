@@ -0,0 +1,90 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Records every garbage collection that happens while it is started: pause durations and the heap
+ * occupancy after each collection. Explicit System.gc() calls made by the harness are ignored.
+ * Notifications are delivered asynchronously by the JVM, so a collection that ends just before
+ * stop() may be missed.
+ */
+public class GcMonitor implements NotificationListener {
+
+    private final List<Long> pauses = new ArrayList<Long>(); // milliseconds
+    private long maxHeapAfterGc = 0;
+
+    public void start() {
+        for (GarbageCollectorMXBean gcbean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gcbean instanceof NotificationEmitter) {
+                ((NotificationEmitter) gcbean).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    public void stop() {
+        for (GarbageCollectorMXBean gcbean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gcbean instanceof NotificationEmitter) {
+                try { ((NotificationEmitter) gcbean).removeNotificationListener(this); }
+                catch (ListenerNotFoundException e) { /* was never added */ }
+            }
+        }
+    }
+
+    public void handleNotification(Notification n, Object handback) {
+        if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+        final GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+        if (info.getGcCause().equals("System.gc()")) return;
+        long heapAfterGc = 0;
+        for (MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values()) {
+            heapAfterGc += usage.getUsed();
+        }
+        synchronized (this) {
+            pauses.add(info.getGcInfo().getDuration());
+            maxHeapAfterGc = Math.max(maxHeapAfterGc, heapAfterGc);
+        }
+    }
+
+    public synchronized int getCount() {
+        return pauses.size();
+    }
+
+    /** @return the given percentile (0..100) of the pause durations in milliseconds, or 0 if there were none **/
+    public synchronized long getPausePercentile(double percentile) {
+        if (pauses.isEmpty()) return 0;
+        final long[] sorted = new long[pauses.size()];
+        for (int i=0;i<sorted.length;i++) sorted[i] = pauses.get(i);
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length); // nearest-rank method
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /** @return the largest heap occupancy (in bytes) observed right after a collection, or 0 if there were none **/
+    public synchronized long getMaxHeapAfterGc() {
+        return maxHeapAfterGc;
+    }
+}
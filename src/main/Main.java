@@ -29,15 +29,18 @@ import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class Main {
 
     // some variables for the test harness
     protected final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
     public static final int RAW_NUMBER_OF_PROCESSORS = Runtime.getRuntime().availableProcessors();
-    public static final int NUMBER_OF_PROCESSORS = RAW_NUMBER_OF_PROCESSORS == 8 ? 4 : RAW_NUMBER_OF_PROCESSORS; // override for hyperthreading on i7
-    public static final boolean PRINT_FREEMEM = false; // note: just a (rather inaccurate) estimate
-    private long startFreemem = 0;
+    public static final int NUMBER_OF_PROCESSORS = new Affinity(Affinity.Policy.NONE, 0).getPhysicalCoreCount(); // physical cores, ignoring hyperthreads
+    private long heapBaseline = -1; // heap in use after a full GC, measured before the trial's tree was created; -1 if unreliable
+    public static final int STEADY_STATE_WINDOW = 3;     // number of successive warmup trials compared to detect steady state
+    public static final double STEADY_STATE_CV = 0.05;   // steady state: their throughputs have a coefficient of variation below this
+    public static final double DEFAULT_TIMELINE_MS = 100; // sampling interval of the timeline
 
     // variables for the experiment
     protected int nthreads;
@@ -45,9 +48,13 @@ public class Main {
     protected double nseconds;
     protected String filename;
     protected Ratio ratio;
-    protected String alg;
+    protected String alg; // comma-separated names of the algorithms to run (see Algorithms)
     protected SwitchMap switches;
     protected boolean prefill;
+    protected Affinity affinity; // null if worker threads should not be pinned or reported by cpu
+    protected PrintStream timeline; // per-interval throughput of measured trials; null if not requested
+    protected volatile Schedule schedule; // phases of the current trial; null if the workload does not change
+    protected volatile AsyncBST async;    // facade the workers submit to during the current trial; null without -async
     
     // some timing variables
     protected AtomicLong startUserTime = new AtomicLong(0);
@@ -60,26 +67,30 @@ public class Main {
         this.nseconds = nseconds;
         this.filename = filename;
         this.ratio = ratio;
-        this.alg = "BST";
+        if (switches.getString("alg") != null) this.alg = switches.getString("alg");
+        else this.alg = switches.get("shards") > 0 ? "BST-sharded" : "BST";
         this.switches = switches;
         this.prefill = prefill;
+        this.affinity = switches.getString("affinity") == null ? null : Affinity.parse(switches.getString("affinity"));
     }
     
     public final class RandomGenerator {
         final Random rng;
         final int maxKey;
         final int id, numberOfIds;
+        Zipf zipf; // null for uniform keys; changed by the owning worker when the schedule enters a new phase
 
-        public RandomGenerator(final int id, final int numberOfIds, final Random rng, final int maxKey) {
+        public RandomGenerator(final int id, final int numberOfIds, final Random rng, final int maxKey, final Zipf zipf) {
             if (maxKey < 0) throw new RuntimeException("maxKey must be > 0");
             this.rng = rng;
             this.maxKey = maxKey;
             this.id = id;
             this.numberOfIds = numberOfIds;
+            this.zipf = zipf;
         }
 
-        public Integer next() {
-            return rng.nextNatural(maxKey)+1;
+        public int next() {
+            return zipf == null ? rng.nextNatural(maxKey)+1 : zipf.next(rng);
         }
     }
 
@@ -100,19 +111,27 @@ public class Main {
         public abstract long getWallTime();
         public abstract long getCPUTime();
         public abstract long getKeysum();
+        public abstract int getCpu();
+        public abstract long getAllocatedBytes(); // -1 if the JVM cannot measure it
+        public abstract LatencyHistogram getLatencies(); // null if latencies were not recorded
+        public abstract long getProgress(int op); // operations of the given OpTape type so far; may be read while the worker runs
     }
     
     public class TimedWorker extends Worker {
         public final long WORK_TIME;
         CyclicBarrier start;
         RandomGenerator gen;
+        final OpTape tape; // if not null, operations are replayed from the tape instead of generated
         BSTInterface tree;
+        final RecordingBST recorder; // if not null, operations go through it so they are recorded
         int trueDel, falseDel, trueIns, falseIns, trueFind, falseFind;
         long keysum; // sum of new keys inserted by this thread minus keys deleted by this thread
         final Experiment ex;
         Random rng;
 
         private long id;
+        private final int index; // index of this worker among the trial's workers
+        private int cpu = -1;    // cpu this worker was pinned to (or last ran on)
         private ThreadMXBean bean;
         
         public final AtomicLong sharedStartUserTime;
@@ -123,22 +142,38 @@ public class Main {
         public long cpuTime;
         public long userTime;
         public long wallTime;
+        public long myStartAllocatedBytes;
+        public long allocatedBytes = -1;
+        private LatencyHistogram latencies;
+        private long insThreshold, delThreshold; // see nextOp()
+        private int phase = -1; // index of the schedule phase the thresholds and generator are set for
+        private final AtomicLongArray progress = new AtomicLongArray(16); // counts per op type; padded to its own cache lines
+        private final long[] opsByType = new long[3];
+        private final boolean sampled = schedule != null || timeline != null; // whether the trial's sampler reads progress
+        private int tapePosition = 0;
+        private int nextKey;
         public ArrayList<Worker> workers3; // ref to containing array [dirty technique :P...]
 
-        public TimedWorker(final long WORK_TIME,
+        public TimedWorker(final int index,
+                           final long WORK_TIME,
                            final RandomGenerator gen,
+                           final OpTape tape,
                            final Experiment ex,
                            final java.util.Random rng,
                            final BSTInterface tree,
+                           final RecordingBST recorder,
                            final CyclicBarrier start,
                            final AtomicLong sharedStart,
                            final AtomicLong sharedStartWallTime,
                            final ArrayList<Worker> workers) {
+            this.index = index;
             this.WORK_TIME = WORK_TIME;
             this.gen = gen;
+            this.tape = tape;
             this.ex = ex;
             this.rng = new Random(rng.nextInt());
             this.tree = tree;
+            this.recorder = recorder;
             this.start = start;
             this.sharedStartUserTime = sharedStart;
             this.workers3 = workers;
@@ -158,6 +193,7 @@ public class Main {
                 System.exit(-1);
             }
             id = java.lang.Thread.currentThread().getId();
+            if (affinity != null) cpu = affinity.pinCurrentThread(index);
             
             // everyone waits on barrier
             if (start != null) try { start.await(); } catch (Exception e) { e.printStackTrace(); System.exit(-1); }
@@ -169,26 +205,42 @@ public class Main {
             myStartUserTime = bean.getThreadUserTime(id);
             myStartCPUTime = bean.getThreadCpuTime(id);
             myStartWallTime = System.nanoTime();
+            myStartAllocatedBytes = threadAllocatedBytes(bean, id);
             sharedStartUserTime.compareAndSet(0, myStartUserTime);
             sharedStartWallTime.compareAndSet(0, myStartWallTime);
             
+            insThreshold = (long) (ex.ratio.ins * Integer.MAX_VALUE);
+            delThreshold = (long) ((ex.ratio.ins + ex.ratio.del) * Integer.MAX_VALUE);
+            final Schedule schedule = Main.this.schedule;
+            
             // perform operations while experiment's state is running
-            while (ex.state == ExperimentState.RUNNING) {
-                final int key = gen.next();
-                final double op = rng.nextNatural() / (double) Integer.MAX_VALUE;
-                if (op < ratio.ins) {
-                    if (tree.insert(key)) {
-                        keysum += key;
-                        trueIns++;
-                    } else falseIns++;                    
-                } else if (op < ratio.ins + ratio.del) {
-                    if (tree.remove(key)) {
-                        keysum -= key;
-                        trueDel++;
-                    } else falseDel++;
-                } else {
-                    if (tree.contains(key)) trueFind++;
-                    else falseFind++;
+            if (tree instanceof RemoteBST) {
+                runPipelined(((RemoteBST) tree).getClient(), schedule);
+            } else if (async != null) {
+                runAsync(async, schedule);
+            } else if (switches.get("pq") > 0) {
+                runQueue((BST) tree);
+            } else {
+                final BSTInterface target = recorder != null ? recorder : tree;
+                while (ex.state == ExperimentState.RUNNING) {
+                    if (schedule != null && ex.phase != phase) enterPhase(schedule, ex.phase);
+                    final int op = nextOp();
+                    final int key = nextKey;
+                    if (op == OpTape.OP_INSERT) {
+                        if (target.insert(key)) {
+                            keysum += key;
+                            trueIns++;
+                        } else falseIns++;                    
+                    } else if (op == OpTape.OP_REMOVE) {
+                        if (target.remove(key)) {
+                            keysum -= key;
+                            trueDel++;
+                        } else falseDel++;
+                    } else {
+                        if (target.contains(key)) trueFind++;
+                        else falseFind++;
+                    }
+                    if (sampled) countProgress(op);
                 }
             }
             
@@ -196,6 +248,143 @@ public class Main {
             wallTime = System.nanoTime();
             userTime = bean.getThreadUserTime(id);
             cpuTime = bean.getThreadCpuTime(id);
+            if (myStartAllocatedBytes >= 0) allocatedBytes = threadAllocatedBytes(bean, id) - myStartAllocatedBytes;
+            if (affinity != null && cpu < 0) cpu = Affinity.currentCpu();
+        }
+
+        /**
+         * Publish one more operation of the given type to the sampler. Only called when the trial is sampled,
+         * so unsampled trials do not pay for the store.
+         */
+        private void countProgress(final int op) {
+            progress.lazySet(op, ++opsByType[op]); // cheap store; the sampler only needs to see it eventually
+        }
+
+        /**
+         * Switch the operation mix and the key distribution to the given phase of the schedule.
+         */
+        private void enterPhase(final Schedule schedule, final int phase) {
+            this.phase = phase;
+            insThreshold = (long) (schedule.ratios[phase].ins * Integer.MAX_VALUE);
+            delThreshold = (long) ((schedule.ratios[phase].ins + schedule.ratios[phase].del) * Integer.MAX_VALUE);
+            gen.zipf = schedule.zipfs[phase];
+        }
+
+        /**
+         * Choose the next operation, and set nextKey to its key.
+         * Operations are chosen by comparing a random natural number against the thresholds,
+         * or replayed from the tape.
+         */
+        private int nextOp() {
+            if (tape == null) {
+                nextKey = gen.next();
+                final int r = rng.nextNatural();
+                return r < insThreshold ? OpTape.OP_INSERT : r < delThreshold ? OpTape.OP_REMOVE : OpTape.OP_CONTAINS;
+            }
+            nextKey = tape.getKey(tapePosition);
+            final int op = tape.getOp(tapePosition);
+            if (++tapePosition == tape.length) tapePosition = 0;
+            return op;
+        }
+        
+        /**
+         * Producer/consumer loop for using the tree as a priority queue: workers with an even index insert keys,
+         * and workers with an odd index remove the smallest key, or one of the -pqN smallest keys if N > 0.
+         * Removals that find the tree empty are counted as failed removes.
+         */
+        private void runQueue(final BST queue) {
+            final int spread = (int) switches.get("pq-spread");
+            final boolean producer = index % 2 == 0;
+            while (ex.state == ExperimentState.RUNNING) {
+                if (producer) {
+                    final int key = gen.next();
+                    if (queue.insert(key)) {
+                        keysum += key;
+                        trueIns++;
+                    } else falseIns++;
+                    if (sampled) countProgress(OpTape.OP_INSERT);
+                } else {
+                    final java.util.OptionalInt key = spread > 0 ? queue.pollApproxFirst(spread) : queue.pollFirst();
+                    if (key.isPresent()) {
+                        keysum -= key.getAsInt();
+                        trueDel++;
+                    } else falseDel++;
+                    if (sampled) countProgress(OpTape.OP_REMOVE);
+                }
+            }
+        }
+
+        /**
+         * Load-generator loop for a tree served over the network: send a window of -pipeline requests,
+         * then collect their results, recording the latency of each request.
+         */
+        private void runPipelined(final TreeClient client, final Schedule schedule) {
+            final int depth = Math.max(1, (int) switches.get("pipeline"));
+            final int[] ops = new int[depth], keys = new int[depth];
+            latencies = new LatencyHistogram();
+            try {
+                while (ex.state == ExperimentState.RUNNING) {
+                    if (schedule != null && ex.phase != phase) enterPhase(schedule, ex.phase);
+                    for (int i=0;i<depth;i++) {
+                        ops[i] = nextOp();
+                        keys[i] = nextKey;
+                        client.send(ops[i], keys[i]);
+                    }
+                    final long sent = System.nanoTime();
+                    client.flush();
+                    for (int i=0;i<depth;i++) {
+                        final boolean result = client.receive();
+                        latencies.record(System.nanoTime() - sent);
+                        if (ops[i] == OpTape.OP_INSERT) {
+                            if (result) { keysum += keys[i]; trueIns++; } else falseIns++;
+                        } else if (ops[i] == OpTape.OP_REMOVE) {
+                            if (result) { keysum -= keys[i]; trueDel++; } else falseDel++;
+                        } else {
+                            if (result) trueFind++; else falseFind++;
+                        }
+                        if (sampled) countProgress(ops[i]);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+
+        /**
+         * Load-generator loop for an AsyncBST: submit a window of -pipeline operations,
+         * then wait for their futures, recording the latency of each operation.
+         */
+        private void runAsync(final AsyncBST async, final Schedule schedule) {
+            final int depth = Math.max(1, (int) switches.get("pipeline"));
+            final int[] ops = new int[depth], keys = new int[depth];
+            @SuppressWarnings("unchecked")
+            final CompletableFuture<Boolean>[] results = (CompletableFuture<Boolean>[]) new CompletableFuture<?>[depth];
+            latencies = new LatencyHistogram();
+            while (ex.state == ExperimentState.RUNNING) {
+                if (schedule != null && ex.phase != phase) enterPhase(schedule, ex.phase);
+                final long sent = System.nanoTime();
+                for (int i=0;i<depth;i++) {
+                    ops[i] = nextOp();
+                    keys[i] = nextKey;
+                    results[i] = ops[i] == OpTape.OP_INSERT ? async.insert(keys[i])
+                               : ops[i] == OpTape.OP_REMOVE ? async.remove(keys[i])
+                               : async.contains(keys[i]);
+                }
+                for (int i=0;i<depth;i++) {
+                    final boolean result = results[i].join();
+                    latencies.record(System.nanoTime() - sent);
+                    results[i] = null;
+                    if (ops[i] == OpTape.OP_INSERT) {
+                        if (result) { keysum += keys[i]; trueIns++; } else falseIns++;
+                    } else if (ops[i] == OpTape.OP_REMOVE) {
+                        if (result) { keysum -= keys[i]; trueDel++; } else falseDel++;
+                    } else {
+                        if (result) trueFind++; else falseFind++;
+                    }
+                    if (sampled) countProgress(ops[i]);
+                }
+            }
         }
 
         public int getOpCount() { return 0; }
@@ -214,18 +403,23 @@ public class Main {
         public long getWallTime() { return wallTime; }
         public long getCPUTime() { return wallTime; }
         public long getKeysum() { return keysum; }
+        public int getCpu() { return cpu; }
+        public long getAllocatedBytes() { return allocatedBytes; }
+        public LatencyHistogram getLatencies() { return latencies; }
+        public long getProgress(int op) { return progress.get(op); }
     }
     
-    final class BoolHolder { volatile boolean b; }
-    
+    /**
+     * A prefilling thread. Thread `index` of `nthreads` only touches the keys congruent to index+1 modulo nthreads,
+     * and always performs all of its operations, so the prefilled set only depends on the seeds, not on the interleaving.
+     */
     final class FixedNumberOfOpsWorker extends Thread {
         final BSTInterface tree;
         final CyclicBarrier start, end;
         final int opsToPerform;
         final Random rng;
         final Ratio ratio;
-        final int maxkey;
-        final BoolHolder done;
+        final int index, nthreads, nkeys;
         long keysum;
         
         public FixedNumberOfOpsWorker(
@@ -233,33 +427,34 @@ public class Main {
                 final int opsToPerform,
                 final Ratio ratio,
                 final int maxkey,
+                final int index,
+                final int nthreads,
                 final Random rng,
                 final CyclicBarrier start,
-                final CyclicBarrier end,
-                final BoolHolder done) {
+                final CyclicBarrier end) {
             this.tree = tree;
             this.opsToPerform = opsToPerform;
             this.ratio = ratio;
-            this.maxkey = maxkey;
+            this.index = index;
+            this.nthreads = nthreads;
+            this.nkeys = maxkey > index ? (maxkey - index - 1) / nthreads + 1 : 0;
             this.rng = rng;
             this.start = start;
             this.end = end;
-            this.done = done;
         }
         
         @Override
         public void run() {
             try { start.await(); } catch (Exception ex) { ex.printStackTrace(); System.exit(-1); }
             
-            for (int i=0; i < opsToPerform && !done.b; i++) {
-                int key = rng.nextNatural(maxkey)+1;
+            for (int i=0; i < opsToPerform && nkeys > 0; i++) {
+                int key = index + 1 + nthreads * rng.nextNatural(nkeys);
                 if (rng.nextNatural() < ratio.ins * Integer.MAX_VALUE) {
                     if (tree.insert(key)) keysum += key;
                 } else {
                     if (tree.remove(key)) keysum -= key;
                 }
             }
-            done.b = true;
             try { end.await(); } catch (Exception ex) { ex.printStackTrace(); System.exit(-1); }
         }
         
@@ -276,29 +471,49 @@ public class Main {
             final SizeKeysumPair pair,
             final java.util.Random rng,
             final BSTInterface tree,
+            final RecordingBST recorder,
             final Experiment ex) {
         
+        if (switches.get("pq") > 0 && !(tree instanceof BST)) {
+            System.out.println("-pq needs a BST, but " + ex.alg + " is a " + tree.getClass().getSimpleName());
+            return false;
+        }
+
         // prepare worker threads to run the trial
         startWallTime = new AtomicLong(0);
         startUserTime = new AtomicLong(0);
         CyclicBarrier start = new CyclicBarrier(ex.nprocs);
         ArrayList<RandomGenerator> arrays =  new ArrayList<RandomGenerator>(ex.nprocs); // generators supply keys for each thread
         ArrayList<Worker> workers = new ArrayList<Worker>(ex.nprocs);    // these are the threads that perform random operations
+        final Zipf zipf = createZipf(ex);
+        final OpTape[] tapes = createTapes(ex, zipf, rng);
+        schedule = switches.getString("phases") == null ? null : new Schedule(switches.getString("phases"), ex.maxkey, zipf);
+        ex.phase = 0;
+        final int asyncWorkers = (int) switches.get("async");
+        async = asyncWorkers == 0 ? null
+                : new AsyncBST(recorder != null ? recorder : tree, asyncWorkers, AsyncBST.DEFAULT_BATCH_SIZE, AsyncBST.DEFAULT_LINGER_NANOS);
         for (int i=0;i<ex.nprocs;i++) {
-            arrays.add(new RandomGenerator(i, ex.nprocs, new Random(rng.nextInt()), ex.maxkey));
-            workers.add(new TimedWorker((long) (nseconds*1e9), arrays.get(i), ex, rng, tree, start, startUserTime, startWallTime, workers));
+            arrays.add(new RandomGenerator(i, ex.nprocs, new Random(rng.nextInt()), ex.maxkey, zipf));
+            workers.add(new TimedWorker(i, (long) (nseconds*1e9), arrays.get(i), tapes == null ? null : tapes[i], ex, rng, tree, recorder, start, startUserTime, startWallTime, workers));
         }
         
         // perform garbage collection to clean up after the last trial, and record how much GC has happened so far
         System.gc();
         final long gcTimeStart = totalGarbageCollectionTimeMillis();
+        final long gcCountStart = totalGarbageCollectionCount();
+        final GcMonitor gcMonitor = new GcMonitor();
+        gcMonitor.start();
         
         // run the trial
         for (int i=0;i<ex.nprocs;i++) workers.get(i).start();
         ex.state = ExperimentState.RUNNING;
         long localStartTime = System.nanoTime();
         try {
-            Thread.sleep((long)(nseconds * 1e3));
+            if (schedule != null || timeline != null) {
+                sample(discardResults ? null : timeline, prefix, ex, workers, localStartTime, localStartTime + (long) (nseconds * 1e9));
+            } else {
+                Thread.sleep((long)(nseconds * 1e3));
+            }
         } catch (InterruptedException ex1) {
             ex1.printStackTrace();
             System.exit(-1);
@@ -309,17 +524,37 @@ public class Main {
         // stop all threads and record how much GC has happened so far
         try { for (int i=0;i<ex.nprocs;i++) workers.get(i).join(); }
         catch (InterruptedException e) { e.printStackTrace(); System.exit(-1); }
+        if (async != null) {
+            async.close();
+            async = null;
+        }
         final long gcTimeEnd = totalGarbageCollectionTimeMillis();
+        final long gcCountEnd = totalGarbageCollectionCount();
+        gcMonitor.stop();
         
         // compute key checksum for all threads (including from prefilling) and compare it with the key checksum for the data structure
         long threadsKeysum = pair.keysum;
         for (int i=0;i<ex.nprocs;++i) {
             threadsKeysum += workers.get(i).getKeysum();
         }
+        if (tree instanceof Evicting) {
+            threadsKeysum -= ((Evicting) tree).getEvictedKeysum(); // includes keys evicted while prefilling
+        }
         long dsKeysum = tree.getKeysum();
+        if (tree instanceof Buffering) {
+            // read after getKeysum(), which applies the updates still buffered; includes prefilling
+            threadsKeysum += ((Buffering) tree).getKeysumCorrection();
+        }
         if (dsKeysum != threadsKeysum) {
             throw new RuntimeException("threadsKeysum=" + threadsKeysum + " does not match dsKeysum=" + dsKeysum);
         }
+        // record throughput even for discarded trials, so warmup trials can be used to detect steady state
+        if (discardResults) {
+            long nops = 0;
+            for (Worker w : workers) nops += opCount(w);
+            ex.throughput = (int)(nops/((localEndTime - localStartTime)/1e9));
+        }
+        
         // produce output
         if (!discardResults) {
             long endWallTime = Long.MAX_VALUE;
@@ -339,7 +574,7 @@ public class Main {
                 ntruefind += w.getTrueFind();
                 nfalsefind += w.getFalseFind();
             }
-            int nnodes = 0;
+            int nnodes = tree.size();
             double averageDepth = 0;
             long ntrue = ntrueins+ntruedel+ntruefind, nfalse = nfalseins+nfalsedel+nfalsefind;
             long nops = ntrue+nfalse;
@@ -357,18 +592,211 @@ public class Main {
             out.print(gcElapsedTime + ",");
         
             out.print(ex.throughput);
-    
-            if (PRINT_FREEMEM) {
-                System.gc();
-                final long freemem = Runtime.getRuntime().freeMemory();
-                out.print("," + freemem + "," + (startFreemem - freemem) + "," + (nnodes > 0 ? ((startFreemem - freemem)/nnodes) : 0));
+            
+            // allocation and gc pressure: bytes allocated by the workers, collections and pauses during the trial,
+            // and the heap retained by the tree itself (measured after a full collection)
+            long allocatedBytes = 0;
+            for (Worker w : workers) {
+                if (w.getAllocatedBytes() < 0) { allocatedBytes = -1; break; }
+                allocatedBytes += w.getAllocatedBytes();
             }
+            out.print("," + allocatedBytes + "," + (allocatedBytes < 0 || nops == 0 ? -1 : (double) allocatedBytes / nops));
+            out.print("," + (gcCountEnd-gcCountStart) + "," + gcMonitor.getPausePercentile(50) + "," + gcMonitor.getPausePercentile(99)
+                    + "," + gcMonitor.getPausePercentile(100) + "," + gcMonitor.getMaxHeapAfterGc());
+            long heapUsed = heapUsedAfterFullGc();
+            if (tapes != null && switches.getString("trace") == null) heapUsed -= (long) OpTape.RECORD_BYTES * tapes[0].length * ex.nprocs; // generated tapes are still reachable
+            out.print("," + (heapBaseline < 0 ? -1 : nnodes > 0 ? (double) (heapUsed - heapBaseline) / nnodes : 0));
             
             out.println(); // finished line of output
+            
+            if (affinity != null) printPlacement(workers, elapsed);
+            printLatencies(workers);
+            if (tree instanceof Evicting) {
+                final Evicting cache = (Evicting) tree;
+                System.out.println("cache: capacity " + cache.getCapacity() + ", hit rate " + toPercent((double) ntruefind / Math.max(1, ntruefind + nfalsefind))
+                        + "%, " + cache.getEvictionCount() + " evictions since creation, throughput " + ex.throughput);
+            }
+            if (tree instanceof Filtering) {
+                final Filtering filter = (Filtering) tree;
+                final long negatives = filter.getFilteredCount() + filter.getFalsePositiveCount();
+                System.out.println("filter: " + filter.getFilterBytes() + " bytes (" + (nnodes > 0 ? filter.getFilterBytes() / (double) nnodes : 0) + " per key), "
+                        + toPercent((double) filter.getFilteredCount() / Math.max(1, ntruefind + nfalsefind)) + "% of lookups answered by the filter, "
+                        + "false-positive rate " + toPercent((double) filter.getFalsePositiveCount() / Math.max(1, negatives)) + "%, throughput " + ex.throughput);
+            }
+            if (tree instanceof ReplicatedBST) {
+                final ReplicatedBST primary = (ReplicatedBST) tree;
+                for (ReplicaFollower replica : primary.getFollowers()) {
+                    final long lagRecords = replica.getLagRecords();
+                    boolean caughtUp = false;
+                    try { caughtUp = replica.awaitApplied(primary.getPublishedCount(), 10000); }
+                    catch (InterruptedException e) { e.printStackTrace(); System.exit(-1); }
+                    if (!caughtUp) {
+                        System.out.println("ERROR: the replica " + (replica.isOverrun() ? "was overrun; use a larger -ringN" : "did not catch up"));
+                        return false;
+                    }
+                    if (replica.getKeysum() != dsKeysum) {
+                        System.out.println("ERROR: replica keysum " + replica.getKeysum() + " does not match dsKeysum=" + dsKeysum);
+                        return false;
+                    }
+                    System.out.println("replica: " + replica.getAppliedCount() + " changes applied since creation, lag at the end of the trial "
+                            + lagRecords + " changes, mean " + replica.getTotalLagNanos() / Math.max(1, replica.getAppliedCount()) / 1000
+                            + "us max " + replica.getMaxLagNanos() / 1000 + "us, throughput " + ex.throughput);
+                }
+            }
+            if (tree instanceof Buffering) {
+                final Buffering buffered = (Buffering) tree;
+                final long napplied = Math.max(1, buffered.getAppliedCount());
+                System.out.println("buffer: " + buffered.getAppliedCount() + " updates applied since creation, staleness mean "
+                        + buffered.getStalenessNanos() / napplied / 1000 + "us max " + buffered.getMaxStalenessNanos() / 1000 + "us, "
+                        + toPercent((double) buffered.getMispredictedCount() / napplied) + "% found nothing to change, throughput " + ex.throughput);
+            }
         }
         return true;
     }
     
+    /**
+     * Sleep until the end of the trial, waking up every timeline interval to record the throughput of each operation type
+     * since the previous sample, and at every phase boundary of the schedule to move the workers to the next phase.
+     * @param out - Where the samples are written, or null if they should not be recorded.
+     */
+    private void sample(final PrintStream out, final String prefix, final Experiment ex, final List<Worker> workers,
+            final long startNanos, final long endNanos) throws InterruptedException {
+        final long interval = (long) ((switches.get("timeline") > 0 ? switches.get("timeline") : DEFAULT_TIMELINE_MS) * 1e6);
+        final long[] last = new long[3];
+        long lastNanos = startNanos;
+        long lastGcMillis = totalGarbageCollectionTimeMillis();
+        long lastGcCount = totalGarbageCollectionCount();
+        long nextSample = startNanos + interval;
+        long nextPhase = schedule == null || schedule.ends.length == 0 ? Long.MAX_VALUE : startNanos + schedule.ends[0];
+        while (true) {
+            final long wake = Math.min(Math.min(nextSample, nextPhase), endNanos);
+            for (long now = System.nanoTime(); now < wake; now = System.nanoTime()) {
+                Thread.sleep((wake - now) / 1000000, (int) ((wake - now) % 1000000));
+            }
+            final long now = System.nanoTime();
+            // every sample covers a single phase, so record it before the phase changes
+            final long[] ops = new long[3];
+            for (Worker w : workers) {
+                for (int op=0;op<3;op++) ops[op] += w.getProgress(op);
+            }
+            final long gcMillis = totalGarbageCollectionTimeMillis();
+            final long gcCount = totalGarbageCollectionCount();
+            if (out != null) {
+                final double seconds = (now - lastNanos) / 1e9;
+                out.println(prefix + "," + (now - startNanos) / 1e9 + "," + ex.phase + "," + seconds
+                        + "," + (long) ((ops[OpTape.OP_INSERT] - last[OpTape.OP_INSERT]) / seconds)
+                        + "," + (long) ((ops[OpTape.OP_REMOVE] - last[OpTape.OP_REMOVE]) / seconds)
+                        + "," + (long) ((ops[OpTape.OP_CONTAINS] - last[OpTape.OP_CONTAINS]) / seconds)
+                        + "," + (long) ((ops[0] + ops[1] + ops[2] - last[0] - last[1] - last[2]) / seconds)
+                        + "," + (gcMillis - lastGcMillis) + "," + (gcCount - lastGcCount));
+            }
+            System.arraycopy(ops, 0, last, 0, 3);
+            lastNanos = now;
+            lastGcMillis = gcMillis;
+            lastGcCount = gcCount;
+            if (now >= endNanos) break;
+            if (now >= nextSample) nextSample += interval;
+            if (now >= nextPhase) {
+                ex.phase++;
+                nextPhase = ex.phase < schedule.ends.length ? startNanos + schedule.ends[ex.phase] : Long.MAX_VALUE;
+            }
+        }
+    }
+    
+    /**
+     * Print the distribution of operation latencies over all workers, if they recorded any.
+     */
+    private void printLatencies(final List<Worker> workers) {
+        final LatencyHistogram all = new LatencyHistogram();
+        for (Worker w : workers) {
+            if (w.getLatencies() != null) all.add(w.getLatencies());
+        }
+        if (all.getCount() == 0) return;
+        System.out.println("latency (us): p50=" + all.getPercentile(50)/1e3 + " p99=" + all.getPercentile(99)/1e3
+                + " p99.9=" + all.getPercentile(99.9)/1e3 + " max=" + all.getMax()/1e3 + " (" + all.getCount() + " ops)");
+    }
+    
+    /**
+     * Print the throughput of the worker threads, grouped by socket and by physical core.
+     */
+    private void printPlacement(final List<Worker> workers, final double elapsed) {
+        final TreeMap<Integer, TreeMap<Integer, long[]>> sockets = new TreeMap<Integer, TreeMap<Integer, long[]>>();
+        for (Worker w : workers) {
+            final long ops = opCount(w);
+            final Affinity.Cpu cpu = w.getCpu() < 0 ? new Affinity.Cpu(-1, -1, -1) : affinity.getCpu(w.getCpu());
+            if (!sockets.containsKey(cpu.socket)) sockets.put(cpu.socket, new TreeMap<Integer, long[]>());
+            final TreeMap<Integer, long[]> cores = sockets.get(cpu.socket);
+            if (!cores.containsKey(cpu.core)) cores.put(cpu.core, new long[2]);
+            cores.get(cpu.core)[0]++;
+            cores.get(cpu.core)[1] += ops;
+        }
+        System.out.println("affinity " + affinity + ":");
+        for (Entry<Integer, TreeMap<Integer, long[]>> socket : sockets.entrySet()) {
+            long nthr = 0, nops = 0;
+            String cores = "";
+            for (Entry<Integer, long[]> core : socket.getValue().entrySet()) {
+                nthr += core.getValue()[0];
+                nops += core.getValue()[1];
+                cores += " core" + (core.getKey() < 0 ? "?" : core.getKey()) + "=" + core.getValue()[0] + "thr/" + (long)(core.getValue()[1]/elapsed);
+            }
+            System.out.println("  socket " + (socket.getKey() < 0 ? "?" : socket.getKey()) + ": " + nthr + " threads, " + (long)(nops/elapsed) + " ops/s [" + cores.trim() + "]");
+        }
+    }
+    
+    /**
+     * Prepare the operation tapes for the trial's workers, outside of the timed region:
+     * either map the trace file given by -trace-, or pre-generate -tapeN random operations per thread.
+     * @return one tape per worker, or null if workers should generate operations on the fly.
+     */
+    private OpTape[] createTapes(final Experiment ex, final Zipf zipf, final java.util.Random rng) {
+        if (switches.getString("trace") != null) {
+            try {
+                return OpTape.mapTrace(switches.getString("trace"), ex.nprocs);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        final int length = (int) switches.get("tape");
+        if (length <= 0) return null;
+        final OpTape[] tapes = new OpTape[ex.nprocs];
+        for (int i=0;i<ex.nprocs;i++) {
+            tapes[i] = OpTape.generate(new Random(rng.nextInt()), ex.ratio, ex.maxkey, zipf, length);
+        }
+        return tapes;
+    }
+    
+    /**
+     * @return the distribution of keys given by -zipfS, or null for uniform keys.
+     */
+    private Zipf createZipf(final Experiment ex) {
+        return switches.get("zipf") > 0 ? new Zipf(ex.maxkey, switches.get("zipf")) : null;
+    }
+    
+    private static long opCount(final Worker w) {
+        return (long) w.getTrueIns() + w.getFalseIns() + w.getTrueDel() + w.getFalseDel() + w.getTrueFind() + w.getFalseFind();
+    }
+    
+    private static long threadAllocatedBytes(final ThreadMXBean bean, final long id) {
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return -1;
+        return sunBean.getThreadAllocatedBytes(id);
+    }
+    
+    private static long heapUsedAfterFullGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    
+    private long totalGarbageCollectionCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean gcbean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gcbean.getCollectionCount());
+        }
+        return result;
+    }
+    
     private long totalGarbageCollectionTimeMillis() {
         final List<GarbageCollectorMXBean> gcbeans = ManagementFactory.getGarbageCollectorMXBeans();
         long result = 0;
@@ -385,14 +813,54 @@ public class Main {
             this.del = del;
             this.ins = ins;
         }
+        /** parses the format produced by toString(), e.g., "50i-50d" **/
+        public static Ratio parse(String s) {
+            if (!s.matches("[0-9]+(\\.[0-9]+)?i-[0-9]+(\\.[0-9]+)?d")) throw new RuntimeException("invalid ratio " + s);
+            final String[] parts = s.split("-");
+            return new Ratio(Double.parseDouble(parts[0].substring(0, parts[0].length()-1)) / 100.,
+                             Double.parseDouble(parts[1].substring(0, parts[1].length()-1)) / 100.);
+        }
         @Override
         public String toString() { return "" + (int)(100*ins) + "i-" + (int)(100*del) + "d"; }
     }
     
+    /**
+     * A phased workload: the operation mix and key distribution change at fixed times during each trial.
+     * The format is a comma-separated list of SECONDS:RATIO[:KEYS] phases, e.g., "2:50i-50d,3:0i-0d:zipf0.99",
+     * where KEYS is "uniform" or "zipfS" (default: the -zipf switch). The last phase lasts until the end of the trial.
+     */
+    protected static final class Schedule {
+        final long[] ends; // end of each phase but the last, in nanoseconds since the start of the trial
+        final Ratio[] ratios;
+        final Zipf[] zipfs;  // null entries for uniform keys
+        public Schedule(final String spec, final int maxKey, final Zipf defaultZipf) {
+            final String[] phases = spec.split(",");
+            ends = new long[phases.length - 1];
+            ratios = new Ratio[phases.length];
+            zipfs = new Zipf[phases.length];
+            long end = 0;
+            for (int i=0;i<phases.length;i++) {
+                final String[] parts = phases[i].split(":");
+                if (parts.length < 2 || parts.length > 3) throw new RuntimeException("invalid phase " + phases[i]);
+                end += (long) (Double.parseDouble(parts[0]) * 1e9);
+                if (i < ends.length) ends[i] = end;
+                ratios[i] = Ratio.parse(parts[1]);
+                if (parts.length == 2) zipfs[i] = defaultZipf;
+                else if (parts[2].equals("uniform")) zipfs[i] = null;
+                else if (parts[2].matches("zipf[0-9]+(\\.[0-9]+)?")) {
+                    final double skew = Double.parseDouble(parts[2].substring("zipf".length()));
+                    zipfs[i] = skew > 0 ? new Zipf(maxKey, skew) : null; // zipf0 is uniform, as for -zipf0
+                }
+                else throw new RuntimeException("invalid key distribution " + parts[2]);
+            }
+        }
+    }
+    
     protected enum ExperimentState { PENDING, RUNNING, STOPPED }
 
     public final class Experiment {
         volatile ExperimentState state = ExperimentState.PENDING;
+        volatile int phase; // current phase of the schedule, advanced by the sampler during a trial
         double totalThreadTime;
         final String alg;
         final int nprocs, maxkey;
@@ -405,21 +873,28 @@ public class Main {
             this.maxkey = maxkey;
             this.ratio = ratio;
         }
+        /** the experiment's parameters other than the algorithm **/
+        public String getConfig() {
+            return nprocs + "thr-" + maxkey + "keys-" + ratio;
+        }
         @Override
         public String toString() {
-            return alg + "-" + nprocs + "thr-" + maxkey + "keys-" + ratio;
+            return alg + "-" + getConfig();
         }
     }
 
     public static class SwitchMap {
         private TreeMap<String, Double> backingMap;
-        public SwitchMap() { backingMap = new TreeMap<String, Double>(); }
-        public int size() { return backingMap.size(); }
+        private TreeMap<String, String> stringMap;
+        public SwitchMap() { backingMap = new TreeMap<String, Double>(); stringMap = new TreeMap<String, String>(); }
+        public int size() { return backingMap.size() + stringMap.size(); }
         public void put(String key, Double val) { backingMap.put(key, val); }
         public double get(String key) {
             if (!backingMap.containsKey(key)) return 0;
             else return backingMap.get(key);
         }
+        public void putString(String key, String val) { stringMap.put(key, val); }
+        public String getString(String key) { return stringMap.get(key); } // null if absent
         public String toString() {
             String s = "";
             boolean first = true;
@@ -427,6 +902,10 @@ public class Main {
                 s += (first ? "" : " ") + e.getKey() + "=" + e.getValue();
                 first = false;
             }
+            for (Entry<String, String> e : stringMap.entrySet()) {
+                s += (first ? "" : " ") + e.getKey() + "=" + e.getValue();
+                first = false;
+            }
             return s;
         }
     }
@@ -490,7 +969,8 @@ public class Main {
         
         final int MAX_REPS = 200;
         final double THRESHOLD_PERCENT = 5; // must be within THRESHOLD_PERCENT percent of expected size to stop
-        final int expectedSize = (int)(maxkey * (ratio.ins / (ratio.ins+ratio.del)) + 0.5);
+        int expectedSize = (int)(maxkey * (ratio.ins / (ratio.ins+ratio.del)) + 0.5);
+        if (tree instanceof Evicting) expectedSize = Math.min(expectedSize, ((Evicting) tree).getCapacity());
         int treeSize = 0;
         int nreps = 0;
         long startFilling = System.nanoTime();
@@ -505,8 +985,8 @@ public class Main {
         // in each iteration, we spawn nthreads threads, which each try to
         // perform nOperations random operations according to the ratio
         // passed to this method.
-        // as soon as one of these threads finishes performings its
-        // nOperations operations, all threads will stop and wait on
+        // each thread works on its own keys, and once all of them have
+        // performed their nOperations operations, they wait on
         // a barrier, and the main thread will measure the size of the tree.
         // if it is within THRESHOLD_PERCENT percent of the expected size
         // in the steady state for this ratio, then we are done.
@@ -521,9 +1001,8 @@ public class Main {
             final CyclicBarrier start = new CyclicBarrier(numThreads);
             final CyclicBarrier end = new CyclicBarrier(numThreads+1);
             final FixedNumberOfOpsWorker[] workers = new FixedNumberOfOpsWorker[numThreads];
-            final BoolHolder done = new BoolHolder();
             for (int i=0;i<numThreads;i++) {
-                workers[i] = new FixedNumberOfOpsWorker(tree, numOperations, ratio, maxkey, new Random(rand.nextInt()), start, end, done);
+                workers[i] = new FixedNumberOfOpsWorker(tree, numOperations, ratio, maxkey, i, numThreads, new Random(rand.nextInt()), start, end);
             }
             for (int i=0;i<numThreads;i++) workers[i].start();
             try { end.await(); } catch (Exception ex) { ex.printStackTrace(); System.exit(-1); }
@@ -539,12 +1018,72 @@ public class Main {
         return new SizeKeysumPair(treeSize, keysum);
     }
     
+    protected BSTInterface createTree(final Experiment ex) {
+        final String server = switches.getString("connect");
+        if (server != null) {
+            try {
+                return new RemoteBST(server.substring(0, server.lastIndexOf(':')), Integer.parseInt(server.substring(server.lastIndexOf(':')+1)));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        return Algorithms.get(ex.alg).create(ex.maxkey, switches);
+    }
+    
+    /**
+     * Prepare a freshly prefilled tree for the measured part of a trial.
+     */
+    protected BSTInterface afterPrefill(BSTInterface tree, final Experiment ex) {
+        if (tree instanceof RoaringSet) ((RoaringSet) tree).optimize(); // pick the smallest container per chunk
+        if (FrozenBST.NAME.equalsIgnoreCase(ex.alg) && tree instanceof BST) {
+            if (ex.ratio.ins > 0 || ex.ratio.del > 0) {
+                System.out.println(FrozenBST.NAME + " is immutable, so it only supports read-only mixes (-ins0 -del0), not " + ex.ratio);
+                System.exit(-1);
+            }
+            tree = ((BST) tree).freeze();
+        }
+        return tree;
+    }
+
     protected ArrayList<Experiment> getExperiments() {
         final ArrayList<Experiment> exp = new ArrayList<Experiment>();
-        exp.add(new Experiment(alg, nthreads, (int) switches.get("keyRange"), ratio));
+        // sweep switches replace the single value given by the corresponding mandatory argument or switch
+        final String[] threadList = sweepList("sweep-threads", "" + nthreads);
+        final String[] keyList = sweepList("sweep-keys", "" + (int) switches.get("keyRange"));
+        final String[] ratioList = sweepList("sweep-ratios", ratio.toString());
+        for (String r : ratioList) {
+            for (String k : keyList) {
+                for (String t : threadList) {
+                    // algorithms are innermost, so they run side by side on each configuration
+                    for (String a : alg.split(",")) {
+                        exp.add(new Experiment(a, Integer.parseInt(t), Integer.parseInt(k),
+                                switches.getString("sweep-ratios") == null ? ratio : Ratio.parse(r)));
+                    }
+                }
+            }
+        }
         return exp;
     }
     
+    private static final int PREFILL = 0, WORKLOAD = 1;
+
+    /**
+     * A generator for the prefill or the workload of one trial, derived from the seed of the experiment's configuration
+     * and not from the state left by earlier trials, so every algorithm prefills with and runs the same operations,
+     * whatever number of random numbers its earlier prefills consumed. Warmup trials are numbered after the measured ones.
+     */
+    private static java.util.Random trialRng(final int configSeed, final int trial, final int use) {
+        final java.util.Random seeds = new java.util.Random(configSeed);
+        for (int i=0;i<2*trial+use;i++) seeds.nextLong();
+        return new java.util.Random(seeds.nextLong());
+    }
+    
+    private String[] sweepList(final String key, final String defaultValue) {
+        final String list = switches.getString(key);
+        return list == null ? new String[] {defaultValue} : list.split(",");
+    }
+    
     public void run(final PrintStream output) {
         // create output streams
         PrintStream out = output;
@@ -558,6 +1097,12 @@ public class Main {
         }
         DualPrintStream stdout = null;
         try { stdout = new DualPrintStream(filename + "_stdout"); } catch (Exception e) { e.printStackTrace(); System.exit(-1); }
+        if (switches.get("timeline") > 0 || switches.getString("phases") != null) {
+            final String timelineFile = (filename == null ? "" : filename + "_") + "timeline.csv";
+            try { timeline = new PrintStream(new File(timelineFile)); }
+            catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+            timeline.println("name,trial,t,phase,interval,insertsPerSec,removesPerSec,containsPerSec,opsPerSec,gcMs,gcCount");
+        }
         
         // print header
         out.print("name"
@@ -570,6 +1115,14 @@ public class Main {
                 + ",time"
                 + ",gcTime"
                 + ",throughput"
+                + ",allocBytes"
+                + ",allocPerOp"
+                + ",gcCount"
+                + ",gcPauseP50ms"
+                + ",gcPauseP99ms"
+                + ",gcPauseMaxms"
+                + ",heapAfterGc"
+                + ",bytesPerNode"
                 );
         out.println();
         
@@ -587,25 +1140,104 @@ public class Main {
         final long startTime = System.nanoTime();
         int nCompleted = 0;
         
-        if (PRINT_FREEMEM) {
-            System.gc();
-            startFreemem = Runtime.getRuntime().freeMemory();
-            System.out.println(" free memory: " + startFreemem);
-        }        
 
         // perform the experiment
         java.util.Random rng = new java.util.Random((int) switches.get("seed"));
+        final int maxWarmupTrials = (int) switches.get("warmup");
+        final ArrayList<String> summaries = new ArrayList<String>();
+        final TreeMap<String, Integer> configSeeds = new TreeMap<String, Integer>();      // experiments that differ only by algorithm share a seed
+        final TreeMap<String, Double> referenceThroughput = new TreeMap<String, Double>(); // mean throughput of the first algorithm, per configuration
         for (Experiment ex : exp) {
-            int experimentSeed = rng.nextInt();
-            java.util.Random experimentRng = new java.util.Random(experimentSeed);
+            if (!configSeeds.containsKey(ex.getConfig())) configSeeds.put(ex.getConfig(), rng.nextInt());
+            final int experimentSeed = configSeeds.get(ex.getConfig());
+
+            // warmup: discard trials until the throughput of the last few trials is stable
+            final double[] warmupThroughputs = new double[maxWarmupTrials];
+            int nwarmup = 0;
+            while (nwarmup < maxWarmupTrials
+                    && Statistics.coefficientOfVariation(warmupThroughputs, nwarmup, STEADY_STATE_WINDOW) > STEADY_STATE_CV) {
+                BSTInterface tree = createTree(ex);
+                SizeKeysumPair p = new SizeKeysumPair(0, 0);
+                if (prefill) p = fillToSteadyState(trialRng(experimentSeed, ntrials + nwarmup, PREFILL), tree, ex.ratio, ex.maxkey, false);
+                tree = afterPrefill(tree, ex);
+                if (!runTrial(out, true, false, ex.alg + ",warmup", p, trialRng(experimentSeed, ntrials + nwarmup, WORKLOAD), tree, null, ex)) System.exit(-1);
+                if (tree instanceof Closeable) {
+                    try { ((Closeable) tree).close(); }
+                    catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+                }
+                warmupThroughputs[nwarmup++] = ex.throughput;
+                stdout.println(ex + " warmup trial " + (nwarmup-1) + " : throughput " + ex.throughput);
+            }
+            if (maxWarmupTrials > 0 && nwarmup == maxWarmupTrials) {
+                stdout.println("WARNING: " + ex + " did not reach steady state after " + nwarmup + " warmup trials");
+            }
 
+            final double[] throughputs = new double[ntrials];
             for (int trial=0;trial<ntrials;++trial) {
-                BSTInterface tree = new BST();
+                // the first trial of an experiment also retains what its code paths allocate once (class initialization,
+                // caches), so the baseline is only taken once an earlier trial of the experiment has run them
+                heapBaseline = nwarmup > 0 || trial > 0 ? heapUsedAfterFullGc() : -1;
+                BSTInterface tree = createTree(ex);
                 SizeKeysumPair p = new SizeKeysumPair(0, 0);
-                if (prefill) p = fillToSteadyState(experimentRng, tree, ex.ratio, ex.maxkey, false);
-                if (!runTrial(out, false, trial+1 == ntrials, tree.getName() + "," + trial, p, experimentRng, tree, ex)) System.exit(-1);
+                if (prefill) p = fillToSteadyState(trialRng(experimentSeed, trial, PREFILL), tree, ex.ratio, ex.maxkey, false);
+                tree = afterPrefill(tree, ex);
+                // the workers record through a decorator, but the harness keeps using the tree itself,
+                // so its optional interfaces (Evicting, Buffering, Closeable, ..) stay visible
+                RecordingBST recorder = null;
+                if (trial == 0 && switches.getString("record") != null) {
+                    try { recorder = new RecordingBST(tree, switches.getString("record")); }
+                    catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+                }
+                if (!runTrial(out, false, trial+1 == ntrials, ex.alg + "," + trial, p, trialRng(experimentSeed, trial, WORKLOAD), tree, recorder, ex)) System.exit(-1);
+                try {
+                    if (recorder != null) recorder.close();
+                    if (tree instanceof Closeable) ((Closeable) tree).close();
+                } catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+                throughputs[trial] = ex.throughput;
                 progress(stdout, tree, ++nCompleted, trial, tree.getName(), startTime, numberOfRuns, ex);
             }
+            
+            final Statistics stats = new Statistics(throughputs);
+            if (!referenceThroughput.containsKey(ex.getConfig())) referenceThroughput.put(ex.getConfig(), stats.mean);
+            final double relative = stats.mean / referenceThroughput.get(ex.getConfig());
+            stdout.println(ex + " throughput mean " + (long) stats.mean + " +- " + (long) stats.ci95 + " (95% ci), median " + (long) stats.median
+                    + ", " + toPercent(relative) + "% of " + alg.split(",")[0]);
+            summaries.add(ex.alg + "," + ex.nprocs + "," + ex.maxkey + "," + ex.ratio + "," + nwarmup + "," + stats.n + ","
+                    + stats.mean + "," + stats.median + "," + stats.stddev + "," + (stats.mean - stats.ci95) + "," + (stats.mean + stats.ci95) + "," + relative);
+        }
+        
+        if (switches.getString("summary") != null) writeSummary(switches.getString("summary"), summaries);
+        if (timeline != null) timeline.close();
+    }
+    
+    /**
+     * Write the per-experiment statistics to PREFIX.csv and PREFIX.json, for plotting.
+     */
+    private void writeSummary(final String prefix, final List<String> rows) {
+        final String header = "alg,nthreads,maxkey,ratio,warmupTrials,trials,mean,median,stddev,ci95low,ci95high,relative";
+        try {
+            final PrintStream csv = new PrintStream(new File(prefix + ".csv"));
+            csv.println(header);
+            for (String row : rows) csv.println(row);
+            csv.close();
+
+            final String[] names = header.split(",");
+            final PrintStream json = new PrintStream(new File(prefix + ".json"));
+            json.println("[");
+            for (int r=0;r<rows.size();r++) {
+                final String[] values = rows.get(r).split(",");
+                json.print("  {");
+                for (int i=0;i<names.length;i++) {
+                    final boolean quote = names[i].equals("alg") || names[i].equals("ratio");
+                    json.print((i > 0 ? ", " : "") + "\"" + names[i] + "\": " + (quote ? "\"" + values[i] + "\"" : values[i]));
+                }
+                json.println("}" + (r+1 < rows.size() ? "," : ""));
+            }
+            json.println("]");
+            json.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
         }
     }
 
@@ -640,6 +1272,37 @@ public class Main {
             System.out.println("\t-ins%     to specify what % (0 to 100) of ops should be inserts");
             System.out.println("\t-del%     to specify what % (0 to 100) of ops should be deletes");
             System.out.println("\t-keysM    random keys will be uniformly from range [0,M) (default 1000000)");
+            System.out.println("\t-alg-A,B,.. to run algorithms A, B, .. side by side with identical seeds (default BST); the first is the reference");
+            System.out.println("\t          available: " + Algorithms.getNames());
+            System.out.println("\t          " + FrozenBST.NAME + " prefills a BST and freezes it into an immutable array, for read-only mixes (-ins0 -del0)");
+            System.out.println("\t-shardsN  to range-partition the key range across N independent trees");
+            System.out.println("\t-rebalanceMS  adapt the partitions of BST-sharded to the load every MS milliseconds (default " + ShardedBST.DEFAULT_REBALANCE_MS + "; 0 never)");
+            System.out.println("\t-fanoutN  keys per node of BLinkTree (default " + BLinkTree.DEFAULT_FANOUT + "; 16 fill a cache line)");
+            System.out.println("\t-zipfS    draw keys from a Zipf distribution with skew S (e.g., 0.99) instead of uniformly; prefilling stays uniform");
+            System.out.println("\t-capacityN  capacity of BST-bounded (default keys/10); its hit rate is printed after each trial");
+            System.out.println("\t-filterN  counters (4 bits each) per key in the Bloom filter of BST-filtered (default " + FilteredBST.DEFAULT_COUNTERS_PER_KEY + ")");
+            System.out.println("\t-timeline[MS]  write the throughput of each operation type every MS (default " + (int) DEFAULT_TIMELINE_MS + ") milliseconds to [FILE_]timeline.csv");
+            System.out.println("\t-phases-SECONDS:RATIO[:uniform|zipfS],..  change the workload during each trial, e.g., -phases-2:50i-50d,3:0i-0d");
+            System.out.println("\t          (implies -timeline; -ins/-del still determine prefilling)");
+            System.out.println("\t-bufferN  updates each thread of BST-buffered buffers before applying them (default " + BufferedBST.DEFAULT_BATCH_SIZE + ")");
+            System.out.println("\t-staleMS  apply an update of BST-buffered at most about MS milliseconds after it is made (default " + BufferedBST.DEFAULT_MAX_DELAY_MS + ")");
+            System.out.println("\t-pq[N]    use the tree as a priority queue: half the threads insert, the other half poll the smallest key,");
+            System.out.println("\t          or one of the N smallest keys (SprayList-style); needs a BST (BST, BST-augmented, BST-lazy)");
+            System.out.println("\t-ringN    changes the ring file of BST-replicated holds (default " + ReplicatedBST.DEFAULT_CAPACITY + "); its replica's lag is printed after each trial");
+            System.out.println("\t-replica-FILE  the ring file of BST-replicated (default: a temporary file)");
+            System.out.println("\t-serversN number of server threads of BST-delegation (default #cpus/4); they run besides the worker threads");
+            System.out.println("\t-warmupN  run up to N warmup trials per experiment, stopping once throughput is stable; they are not recorded");
+            System.out.println("\t-sweep-threadsA,B,..  -sweep-keysA,B,..  -sweep-ratiosXi-Yd,..  run every combination in one JVM");
+            System.out.println("\t-summary-PREFIX  to write mean/median/95% ci of throughput per experiment to PREFIX.csv and PREFIX.json");
+            System.out.println("\t-tapeN    pre-generate N operations per thread before each trial and replay them in a loop");
+            System.out.println("\t-trace-F  replay operations from trace file F (split evenly between threads) instead of random ones");
+            System.out.println("\t-record-F record the operations of the first measured trial to trace file F");
+            System.out.println("\t-connect-HOST:PORT  generate load against a TreeServer (java -cp .. main.TreeServer PORT ALG) instead of a local tree");
+            System.out.println("\t-pipelineN with -connect or -async, keep N requests in flight per thread (default 1); latencies are printed after each trial");
+            System.out.println("\t-asyncN   submit operations through an AsyncBST with N workers over the tree (batches of " + AsyncBST.DEFAULT_BATCH_SIZE
+                    + ", linger " + AsyncBST.DEFAULT_LINGER_NANOS / 1000 + "us)");
+            System.out.println("\t-affinity-P to pin worker threads (Linux) with policy P: compact, scatter, socketN or none");
+            System.out.println("\t          (none only reports where threads ran); per-socket throughput is printed after each trial");
             System.exit(-1);
         }
         int nthreads = 0;
@@ -719,6 +1382,192 @@ public class Main {
                         System.out.println("The key range must be a 32-bit integer.");
                         System.exit(-1);
                     }
+                } else if (args[i].matches("-shards[0-9]+")) {
+                    try {
+                        switches.put("shards", (double) Integer.parseInt(args[i].substring("-shards".length())));
+                        if (switches.get("shards") < 1) {
+                            System.out.println("The number of shards must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The number of shards must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-rebalance[0-9]+")) {
+                    try {
+                        switches.put("rebalance-ms", (double) Integer.parseInt(args[i].substring("-rebalance".length()))); // 0 never rebalances
+                        switches.put("rebalance", 1.0); // the interval may be 0, so its presence is recorded separately
+                    } catch (Exception ex) {
+                        System.out.println("The rebalance interval must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-fanout[0-9]+")) {
+                    try {
+                        switches.put("fanout", (double) Integer.parseInt(args[i].substring("-fanout".length())));
+                        if (switches.get("fanout") < 3) {
+                            System.out.println("The fanout must be > 2");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The fanout must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-zipf[0-9]+(\\.[0-9]+)?")) {
+                    switches.put("zipf", Double.parseDouble(args[i].substring("-zipf".length())));
+                } else if (args[i].matches("-capacity[0-9]+")) {
+                    try {
+                        switches.put("capacity", (double) Integer.parseInt(args[i].substring("-capacity".length())));
+                        if (switches.get("capacity") < 1) {
+                            System.out.println("The capacity must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The capacity must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-filter[0-9]+")) {
+                    try {
+                        switches.put("filter", (double) Integer.parseInt(args[i].substring("-filter".length())));
+                        if (switches.get("filter") < 1) {
+                            System.out.println("The number of counters per key must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The number of counters per key must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-timeline[0-9]*")) {
+                    final String ms = args[i].substring("-timeline".length());
+                    switches.put("timeline", ms.isEmpty() ? DEFAULT_TIMELINE_MS : Double.parseDouble(ms));
+                    if (switches.get("timeline") <= 0) {
+                        System.out.println("The timeline interval must be > 0");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-phases-")) {
+                    try {
+                        new Schedule(args[i].substring("-phases-".length()), 1, null);
+                    } catch (Exception ex) {
+                        System.out.println("Invalid schedule " + args[i] + ": " + ex.getMessage());
+                        System.exit(-1);
+                    }
+                    switches.putString("phases", args[i].substring("-phases-".length()));
+                } else if (args[i].matches("-buffer[0-9]+")) {
+                    try {
+                        switches.put("buffer", (double) Integer.parseInt(args[i].substring("-buffer".length())));
+                        if (switches.get("buffer") < 1) {
+                            System.out.println("The buffer size must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The buffer size must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-stale[0-9]+(\\.[0-9]+)?")) {
+                    switches.put("stale", Double.parseDouble(args[i].substring("-stale".length())));
+                } else if (args[i].matches("-pq[0-9]*")) {
+                    try {
+                        final String spread = args[i].substring("-pq".length());
+                        switches.put("pq-spread", spread.isEmpty() ? 0.0 : (double) Integer.parseInt(spread)); // 0 for pollFirst()
+                        switches.put("pq", 1.0); // the spread may be 0, so its presence is recorded separately
+                    } catch (Exception ex) {
+                        System.out.println("The priority queue spread must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-ring[0-9]+")) {
+                    try {
+                        switches.put("ring", (double) Integer.parseInt(args[i].substring("-ring".length())));
+                        if (switches.get("ring") < 1) {
+                            System.out.println("The ring capacity must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The ring capacity must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-replica-")) {
+                    switches.putString("replica", args[i].substring("-replica-".length()));
+                } else if (args[i].matches("-servers[0-9]+")) {
+                    try {
+                        switches.put("servers", (double) Integer.parseInt(args[i].substring("-servers".length())));
+                        if (switches.get("servers") < 1) {
+                            System.out.println("The number of servers must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The number of servers must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-warmup[0-9]+")) {
+                    try {
+                        switches.put("warmup", (double) Integer.parseInt(args[i].substring("-warmup".length())));
+                    } catch (Exception ex) {
+                        System.out.println("The number of warmup trials must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-sweep-(threads|keys)[0-9]+(,[0-9]+)*")) {
+                    final String name = args[i].startsWith("-sweep-threads") ? "sweep-threads" : "sweep-keys";
+                    switches.putString(name, args[i].substring(name.length() + 1));
+                } else if (args[i].startsWith("-sweep-ratios")) {
+                    try {
+                        for (String r : args[i].substring("-sweep-ratios".length()).split(",")) Ratio.parse(r);
+                        switches.putString("sweep-ratios", args[i].substring("-sweep-ratios".length()));
+                    } catch (Exception ex) {
+                        System.out.println("Ratios must be given as Xi-Yd, e.g., -sweep-ratios50i-50d,10i-10d");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-summary-")) {
+                    switches.putString("summary", args[i].substring("-summary-".length()));
+                } else if (args[i].startsWith("-alg-")) {
+                    for (String a : args[i].substring("-alg-".length()).split(",")) {
+                        if (Algorithms.get(a) == null) {
+                            System.out.println("Unknown algorithm \"" + a + "\"; available: " + Algorithms.getNames());
+                            System.exit(-1);
+                        }
+                    }
+                    switches.putString("alg", args[i].substring("-alg-".length()));
+                } else if (args[i].matches("-tape[0-9]+")) {
+                    try {
+                        switches.put("tape", (double) Integer.parseInt(args[i].substring("-tape".length())));
+                    } catch (Exception ex) {
+                        System.out.println("The tape length must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-trace-")) {
+                    switches.putString("trace", args[i].substring("-trace-".length()));
+                } else if (args[i].startsWith("-record-")) {
+                    switches.putString("record", args[i].substring("-record-".length()));
+                } else if (args[i].matches("-connect-.+:[0-9]+")) {
+                    switches.putString("connect", args[i].substring("-connect-".length()));
+                } else if (args[i].matches("-async[0-9]+")) {
+                    try {
+                        switches.put("async", (double) Integer.parseInt(args[i].substring("-async".length())));
+                        if (switches.get("async") < 1) {
+                            System.out.println("AsyncBST needs at least one worker");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The number of AsyncBST workers must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-pipeline[0-9]+")) {
+                    try {
+                        switches.put("pipeline", (double) Integer.parseInt(args[i].substring("-pipeline".length())));
+                        if (switches.get("pipeline") < 1 || switches.get("pipeline") > TreeServer.MAX_BATCH) {
+                            System.out.println("The pipeline depth must be between 1 and " + TreeServer.MAX_BATCH);
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The pipeline depth must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-affinity-")) {
+                    try {
+                        Affinity.parse(args[i].substring("-affinity-".length()));
+                        switches.putString("affinity", args[i].substring("-affinity-".length()));
+                    } catch (Exception ex) {
+                        System.out.println("Invalid affinity policy: " + ex.getMessage());
+                        System.exit(-1);
+                    }
                 } else if (args[i].startsWith("-file-")) {
                     filename = args[i].substring("-file-".length());
                 } else if (args[i].matches("-prefill")) {
@@ -734,6 +1583,18 @@ public class Main {
             System.out.println("Total percentage over all operations cannot exceed 100");
             System.exit(-1);
         }
+        if (switches.getString("record") != null && (switches.get("pq") > 0 || switches.getString("connect") != null)) {
+            System.out.println("-record records set operations of local trees, so it cannot be combined with -pq or -connect");
+            System.exit(-1);
+        }
+        if (switches.get("async") > 0 && (switches.get("pq") > 0 || switches.getString("connect") != null)) {
+            System.out.println("-async submits set operations to a local tree, so it cannot be combined with -pq or -connect");
+            System.exit(-1);
+        }
+        if (switches.getString("phases") != null && (switches.get("tape") > 0 || switches.getString("trace") != null)) {
+            System.out.println("-phases changes how operations are generated, so it cannot be combined with -tape or -trace");
+            System.exit(-1);
+        }
 
         (new Main(nthreads, ntrials, nseconds, filename,
                 new Ratio(switches.get("ratio-ins") / 100., switches.get("ratio-del") / 100.),
@@ -0,0 +1,121 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A pre-generated sequence of operations that a worker thread replays without allocating.
+ * Each record is two ints (operation, key), stored either in an int[] or in a memory-mapped trace file.
+ *
+ * Trace file format (little-endian): int magic ("BSTT"), int version, long record count,
+ * followed by the records. A single mapping is limited to 2GB, i.e., about 268M records.
+ */
+public class OpTape {
+
+    public static final int OP_INSERT = 0;
+    public static final int OP_REMOVE = 1;
+    public static final int OP_CONTAINS = 2;
+
+    public static final int MAGIC = 0x54545342; // "BSTT" when read as little-endian bytes
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 8;
+
+    private final IntBuffer records;
+    private final int from;
+    public final int length; // number of records
+
+    public OpTape(IntBuffer records, int from, int length) {
+        if (length <= 0) throw new IllegalArgumentException("empty tape");
+        this.records = records;
+        this.from = from;
+        this.length = length;
+    }
+
+    public int getOp(int i) {
+        return records.get(2*(from+i));
+    }
+
+    public int getKey(int i) {
+        return records.get(2*(from+i)+1);
+    }
+
+    /**
+     * Generate random operations the same way TimedWorker does: a uniform key in [1, maxKey],
+     * and an insert, remove or contains chosen according to the ratio.
+     */
+    public static OpTape generate(final Random rng, final Main.Ratio ratio, final int maxKey, final int length) {
+        return generate(rng, ratio, maxKey, null, length);
+    }
+
+    /**
+     * Generate random operations, with keys drawn from the given distribution (uniform if it is null).
+     */
+    public static OpTape generate(final Random rng, final Main.Ratio ratio, final int maxKey, final Zipf zipf, final int length) {
+        final int[] tape = new int[2*length];
+        final long insThreshold = (long) (ratio.ins * Integer.MAX_VALUE);
+        final long delThreshold = (long) ((ratio.ins + ratio.del) * Integer.MAX_VALUE);
+        for (int i=0;i<length;i++) {
+            final int key = zipf == null ? rng.nextNatural(maxKey)+1 : zipf.next(rng);
+            final int r = rng.nextNatural();
+            tape[2*i] = r < insThreshold ? OP_INSERT : r < delThreshold ? OP_REMOVE : OP_CONTAINS;
+            tape[2*i+1] = key;
+        }
+        return new OpTape(IntBuffer.wrap(tape), 0, length);
+    }
+
+    /**
+     * Memory-map a trace file and split its records into `parts` contiguous tapes, one per worker thread.
+     */
+    public static OpTape[] mapTrace(final String filename, final int parts) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_BYTES || map.getInt(0) != MAGIC) throw new IOException(filename + " is not a trace file");
+            if (map.getInt(4) != VERSION) throw new IOException(filename + " has unsupported trace version " + map.getInt(4));
+            final long count = map.getLong(8);
+            if (count > (channel.size() - HEADER_BYTES) / RECORD_BYTES) throw new IOException(filename + " is truncated");
+            if (count < parts) throw new IOException(filename + " has fewer records (" + count + ") than threads");
+            map.position(HEADER_BYTES);
+            final IntBuffer records = map.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            // workers index per-type counters by the operation, so check them all before replaying any
+            for (int i=0;i<count;i++) {
+                final int op = records.get(2*i);
+                if (op < OP_INSERT || op > OP_CONTAINS) throw new IOException(filename + " has invalid operation " + op + " in record " + i);
+            }
+            final OpTape[] tapes = new OpTape[parts];
+            for (int i=0;i<parts;i++) {
+                final int start = (int) (count * i / parts);
+                final int end = (int) (count * (i+1) / parts);
+                tapes[i] = new OpTape(records, start, end - start);
+            }
+            return tapes;
+        } finally {
+            file.close(); // the mapping stays valid after the channel is closed
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BSTInterface whose operations are executed by a TreeServer.
+ * Every thread gets its own connection; creating a RemoteBST resets the server's tree.
+ * The connection of a thread that ended is handed to the next thread that needs one, so short-lived threads
+ * (e.g., the prefilling threads) do not leave connections behind.
+ */
+public class RemoteBST implements BSTInterface, Closeable {
+
+    private final String host;
+    private final int port;
+    private final List<Lease> leases = new ArrayList<Lease>(); // guarded by this
+
+    /** a connection, and the thread it belongs to **/
+    private static final class Lease {
+        final TreeClient client;
+        Thread owner; // guarded by the RemoteBST
+
+        Lease(TreeClient client, Thread owner) {
+            this.client = client;
+            this.owner = owner;
+        }
+    }
+
+    private final ThreadLocal<TreeClient> client = new ThreadLocal<TreeClient>() {
+        @Override
+        protected TreeClient initialValue() {
+            synchronized (RemoteBST.this) {
+                for (Lease l : leases) {
+                    // a thread only ends once it has received every response it asked for, so its connection is idle
+                    if (!l.owner.isAlive()) {
+                        l.owner = Thread.currentThread();
+                        return l.client;
+                    }
+                }
+            }
+            try {
+                final TreeClient c = new TreeClient(host, port);
+                synchronized (RemoteBST.this) {
+                    leases.add(new Lease(c, Thread.currentThread()));
+                }
+                return c;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    public RemoteBST(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
+        try {
+            getClient().reset();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** the calling thread's connection, e.g., to pipeline requests **/
+    public TreeClient getClient() {
+        return client.get();
+    }
+
+    private boolean apply(int op, int key) {
+        try {
+            return getClient().apply(op, key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean contains(final int key) {
+        return apply(OpTape.OP_CONTAINS, key);
+    }
+
+    public boolean insert(final int key) {
+        return apply(OpTape.OP_INSERT, key);
+    }
+
+    public boolean remove(final int key) {
+        return apply(OpTape.OP_REMOVE, key);
+    }
+
+    public int size() {
+        try {
+            return getClient().size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getKeysum() {
+        try {
+            return getClient().getKeysum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String getName() {
+        return "remote-" + host + ":" + port;
+    }
+
+    /** close every thread's connection; must be called when no thread is using the tree **/
+    public synchronized void close() throws IOException {
+        for (Lease l : leases) l.client.close();
+        leases.clear();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics over the measured trials of one experiment.
+ */
+public class Statistics {
+
+    // two-sided 95% quantiles of Student's t distribution for 1..30 degrees of freedom
+    private static final double[] T95 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+    public final int n;
+    public final double mean, median, stddev, ci95; // ci95 is the half-width of the 95% confidence interval
+
+    public Statistics(double[] samples) {
+        if (samples.length == 0) throw new IllegalArgumentException("no samples");
+        final double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        n = sorted.length;
+        double sum = 0;
+        for (double x : sorted) sum += x;
+        mean = sum / n;
+        median = (n % 2 == 1) ? sorted[n/2] : (sorted[n/2-1] + sorted[n/2]) / 2;
+        double sq = 0;
+        for (double x : sorted) sq += (x-mean)*(x-mean);
+        stddev = n > 1 ? Math.sqrt(sq / (n-1)) : 0;
+        ci95 = n > 1 ? tQuantile(n-1) * stddev / Math.sqrt(n) : 0;
+    }
+
+    private static double tQuantile(int df) {
+        return df <= T95.length ? T95[df-1] : 1.960;
+    }
+
+    /** coefficient of variation of the last `window` samples (or +infinity if there are fewer) **/
+    public static double coefficientOfVariation(double[] samples, int count, int window) {
+        if (count < window) return Double.POSITIVE_INFINITY;
+        double sum = 0;
+        for (int i=count-window;i<count;i++) sum += samples[i];
+        final double mean = sum / window;
+        if (mean == 0) return Double.POSITIVE_INFINITY;
+        double sq = 0;
+        for (int i=count-window;i<count;i++) sq += (samples[i]-mean)*(samples[i]-mean);
+        return Math.sqrt(sq / (window-1)) / mean;
+    }
+}
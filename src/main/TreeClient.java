@@ -0,0 +1,102 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A blocking client for TreeServer. It is not thread-safe: each thread should use its own client.
+ * Requests added with send() are buffered and only written on flush() (or when the buffer fills up),
+ * so a caller can pipeline many requests and then collect their results in order with receive().
+ * At most TreeServer.MAX_BATCH requests should be outstanding at any time.
+ */
+public class TreeClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(TreeServer.BUFFER_BYTES); // write mode
+    private final ByteBuffer in = ByteBuffer.allocateDirect(TreeServer.BUFFER_BYTES);  // read mode
+
+    public TreeClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        in.limit(0);
+    }
+
+    /** queue a single-key request (one of the OpTape operations) **/
+    public void send(int op, int key) throws IOException {
+        if (out.remaining() < 5) flush();
+        out.put((byte) op).putInt(key);
+    }
+
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+
+    /** @return the result of the oldest request whose result has not been received yet **/
+    public boolean receive() throws IOException {
+        fill(1);
+        return in.get() != 0;
+    }
+
+    private void fill(int bytes) throws IOException {
+        if (out.position() > 0) flush();
+        while (in.remaining() < bytes) {
+            in.compact();
+            final int n = channel.read(in);
+            in.flip();
+            if (n < 0) throw new EOFException("server closed the connection");
+        }
+    }
+
+    public boolean apply(int op, int key) throws IOException {
+        send(op, key);
+        return receive();
+    }
+
+    public int size() throws IOException {
+        out.put((byte) TreeServer.OP_SIZE);
+        fill(4);
+        return in.getInt();
+    }
+
+    public long getKeysum() throws IOException {
+        out.put((byte) TreeServer.OP_KEYSUM);
+        fill(8);
+        return in.getLong();
+    }
+
+    /** replace the server's tree with an empty one **/
+    public void reset() throws IOException {
+        out.put((byte) TreeServer.OP_RESET);
+        fill(1);
+        in.get();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A non-blocking server that exposes a BSTInterface over TCP.
+ * Each IO thread runs its own selector; connections are spread over them round-robin.
+ * Requests are executed in order as soon as they are parsed, and responses are written in the
+ * same order, so clients may pipeline any number of requests. Socket IO goes through per-connection
+ * direct buffers, so bytes are never copied to or from the Java heap.
+ *
+ * Protocol (big-endian). Request opcodes are the OpTape operation codes plus a few extra ones:
+ *   INSERT/REMOVE/CONTAINS: [op:1][key:4]                 -> [result:1]
+ *   BATCH:                  [3][op:1][n:4][key:4]*n       -> [result:1]*n   (n <= MAX_BATCH)
+ *   SIZE:                   [4]                           -> [size:4]
+ *   KEYSUM:                 [5]                           -> [keysum:8]
+ *   RESET:                  [6]                           -> [1]            (replaces the tree with an empty one)
+ */
+public class TreeServer implements Closeable {
+
+    public static final int OP_BATCH = 3;
+    public static final int OP_SIZE = 4;
+    public static final int OP_KEYSUM = 5;
+    public static final int OP_RESET = 6;
+    public static final int MAX_BATCH = 4096;
+    static final int BUFFER_BYTES = 64 * 1024; // holds a maximal batch request
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);  // in write mode between reads
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES); // in write mode between writes
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class IoThread extends Thread {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+        IoThread(int id) throws IOException {
+            super("TreeServer-io-" + id);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    for (SocketChannel ch; (ch = pending.poll()) != null; ) {
+                        ch.configureBlocking(false);
+                        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        ch.register(selector, SelectionKey.OP_READ, new Connection(ch));
+                    }
+                    final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        final SelectionKey key = it.next();
+                        it.remove();
+                        try {
+                            if (key.isAcceptable()) {
+                                final SocketChannel ch = server.accept();
+                                if (ch != null) ioThreads[nextIoThread++ % ioThreads.length].add(ch);
+                            } else {
+                                serve(key);
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                            key.channel().close();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // closed by close()
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** the served tree, with the number of IO threads executing requests on it **/
+    private static final class Served {
+        final BSTInterface tree;
+        final AtomicInteger users = new AtomicInteger();
+
+        Served(BSTInterface tree) {
+            this.tree = tree;
+        }
+    }
+
+    private final AtomicReference<Served> served;
+    private final BSTFactory factory;
+    private final int maxKey;
+    private final Main.SwitchMap switches;
+    private final ServerSocketChannel server;
+    private final IoThread[] ioThreads;
+    private int nextIoThread = 0; // only used by the thread that accepts connections
+    private volatile boolean closed = false;
+
+    /**
+     * @param factory - Creates the served tree (again on every RESET).
+     * @param maxKey - Passed to the factory.
+     * @param switches - Passed to the factory.
+     * @param port - The TCP port to listen on.
+     * @param nthreads - The number of IO threads.
+     */
+    public TreeServer(BSTFactory factory, int maxKey, Main.SwitchMap switches, int port, int nthreads) throws IOException {
+        this.factory = factory;
+        this.maxKey = maxKey;
+        this.switches = switches;
+        this.served = new AtomicReference<Served>(new Served(factory.create(maxKey, switches)));
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        ioThreads = new IoThread[nthreads];
+        for (int i=0;i<nthreads;i++) ioThreads[i] = new IoThread(i);
+        server.register(ioThreads[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void start() {
+        for (IoThread t : ioThreads) t.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void serve(SelectionKey key) throws IOException {
+        final Connection c = (Connection) key.attachment();
+        if (!flush(c)) {
+            key.interestOps(SelectionKey.OP_WRITE); // stop reading requests until the client drains its responses
+            return;
+        }
+        if (key.isReadable() && c.channel.read(c.in) < 0) throw new IOException("connection closed by peer");
+        boolean stalled;
+        do {
+            c.in.flip();
+            stalled = execute(c);
+            c.in.compact();
+            if (!flush(c)) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        } while (stalled);
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /** @return true if all pending output was written **/
+    private boolean flush(Connection c) throws IOException {
+        c.out.flip();
+        c.channel.write(c.out);
+        final boolean done = !c.out.hasRemaining();
+        c.out.compact();
+        return done;
+    }
+
+    /**
+     * Execute every complete request in the input buffer, as long as its response fits in the output buffer.
+     * @return true if a complete request was left unexecuted because the output buffer is full
+     */
+    private boolean execute(Connection c) throws IOException {
+        final ByteBuffer in = c.in, out = c.out;
+        Served s = acquire();
+        try {
+            while (in.remaining() >= 1) {
+                final int start = in.position();
+                final int op = in.get(start);
+                if (op == OpTape.OP_INSERT || op == OpTape.OP_REMOVE || op == OpTape.OP_CONTAINS) {
+                    if (in.remaining() < 5) break;
+                    if (out.remaining() < 1) return true;
+                    out.put(apply(s.tree, op, in.getInt(start+1)) ? (byte) 1 : (byte) 0);
+                    in.position(start+5);
+                } else if (op == OP_BATCH) {
+                    if (in.remaining() < 6) break;
+                    final int subop = in.get(start+1);
+                    final int n = in.getInt(start+2);
+                    if (n < 0 || n > MAX_BATCH || subop < OpTape.OP_INSERT || subop > OpTape.OP_CONTAINS) throw new IOException("bad batch");
+                    if (in.remaining() < 6 + 4*n) break;
+                    if (out.remaining() < n) return true;
+                    for (int i=0;i<n;i++) out.put(apply(s.tree, subop, in.getInt(start+6+4*i)) ? (byte) 1 : (byte) 0);
+                    in.position(start+6+4*n);
+                } else if (op == OP_SIZE) {
+                    if (out.remaining() < 4) return true;
+                    out.putInt(s.tree.size());
+                    in.position(start+1);
+                } else if (op == OP_KEYSUM) {
+                    if (out.remaining() < 8) return true;
+                    out.putLong(s.tree.getKeysum());
+                    in.position(start+1);
+                } else if (op == OP_RESET) {
+                    if (out.remaining() < 1) return true;
+                    s = reset(s); // later requests of this connection go to the new tree
+                    out.put((byte) 1);
+                    in.position(start+1);
+                } else {
+                    throw new IOException("bad opcode " + op);
+                }
+            }
+            return false;
+        } finally {
+            s.users.decrementAndGet();
+        }
+    }
+
+    private static boolean apply(BSTInterface t, int op, int key) {
+        if (op == OpTape.OP_INSERT) return t.insert(key);
+        if (op == OpTape.OP_REMOVE) return t.remove(key);
+        return t.contains(key);
+    }
+
+    /** the current tree, which is not closed until the caller decrements its users **/
+    private Served acquire() {
+        while (true) {
+            final Served s = served.get();
+            s.users.incrementAndGet();
+            if (served.get() == s) return s;
+            s.users.decrementAndGet(); // replaced by a RESET meanwhile
+        }
+    }
+
+    /**
+     * Replace the tree with an empty one, and close the old tree once no IO thread executes requests on it.
+     * @param mine - The tree the calling IO thread acquired; it is released.
+     * @return the new tree, acquired for the calling IO thread
+     */
+    private Served reset(Served mine) {
+        final Served next = new Served(factory.create(maxKey, switches));
+        next.users.incrementAndGet();
+        mine.users.decrementAndGet();
+        final Served old = served.getAndSet(next);
+        // the other IO threads only hold the old tree until the end of the requests they already read
+        while (old.users.get() > 0) Thread.yield();
+        try {
+            if (old.tree instanceof Closeable) ((Closeable) old.tree).close();
+        } catch (IOException e) {
+            e.printStackTrace(); // the client asked for a new tree, which it got
+        }
+        return next;
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (IoThread t : ioThreads) {
+            for (SelectionKey k : t.selector.keys()) k.channel().close();
+            t.selector.close();
+        }
+    }
+
+    /**
+     * Serve a tree until killed. Arguments: PORT [ALG] [MAXKEY] [IO_THREADS]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: TreeServer PORT [ALG (default BST)] [MAXKEY (default " + Globals.DEFAULT_KEYRANGE + ")] [IO_THREADS (default #cpus)]");
+            System.out.println("\tavailable algorithms: " + Algorithms.getNames());
+            System.exit(-1);
+        }
+        final int port = Integer.parseInt(args[0]);
+        final BSTFactory factory = Algorithms.get(args.length > 1 ? args[1] : "BST");
+        if (factory == null) {
+            System.out.println("Unknown algorithm \"" + args[1] + "\"; available: " + Algorithms.getNames());
+            System.exit(-1);
+        }
+        final int maxKey = args.length > 2 ? Integer.parseInt(args[2]) : Globals.DEFAULT_KEYRANGE;
+        final int nthreads = args.length > 3 ? Integer.parseInt(args[3]) : Main.RAW_NUMBER_OF_PROCESSORS;
+        final TreeServer server = new TreeServer(factory, maxKey, new Main.SwitchMap(), port, nthreads);
+        server.start();
+        System.out.println("serving " + factory.getName() + " on port " + server.getPort() + " with " + nthreads + " io threads");
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Java test harness for throughput experiments on concurrent data structures.
+ * Copyright (C) 2012 Trevor Brown
+ * Contact (tabrown [at] cs [dot] toronto [dot edu]) with any questions or comments.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Zipfian keys in [1, n]: the probability of the key of rank k is proportional to 1/k^s.
+ * Samples are drawn in O(1) time and space by rejection-inversion (Hormann and Derflinger, 1996).
+ * Ranks are scattered over the key range by a multiplicative permutation, so the hot keys are not all
+ * neighbours in the tree.
+ */
+public final class Zipf {
+
+    private final int n;
+    private final double s;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double threshold;
+    private final long multiplier; // coprime with n, so rank -> key is a permutation
+
+    /**
+     * @param n - The number of keys.
+     * @param s - The skew; must be > 0, and around 1 is typical for caches.
+     */
+    public Zipf(final int n, final double s) {
+        if (n < 1) throw new IllegalArgumentException("n must be > 0");
+        if (s <= 0) throw new IllegalArgumentException("s must be > 0");
+        this.n = n;
+        this.s = s;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        long m = (0x9E3779B97F4A7C15L >>> 1) % n;
+        if (m == 0) m = 1;
+        while (gcd(m, n) != 1) m++;
+        this.multiplier = m;
+    }
+
+    /** returns a key x satisfying 1 <= x <= n. **/
+    public int next(final Random rng) {
+        while (true) {
+            final double u = hIntegralN + nextDouble(rng) * (hIntegralX1 - hIntegralN);
+            final double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) k = 1;
+            else if (k > n) k = n;
+            if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) {
+                return (int) ((k - 1) * multiplier % n) + 1;
+            }
+        }
+    }
+
+    private static double nextDouble(final Random rng) {
+        return (rng.nextInt() >>> 1) / (double) (1L << 31);
+    }
+
+    private double h(final double x) {
+        return Math.exp(-s * Math.log(x));
+    }
+
+    // integral of h from 1 to x, up to a constant
+    private double hIntegral(final double x) {
+        final double logX = Math.log(x);
+        return helper2((1 - s) * logX) * logX;
+    }
+
+    private double hIntegralInverse(final double x) {
+        double t = x * (1 - s);
+        if (t < -1) t = -1; // limit rounding errors
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, accurate near 0
+    private static double helper1(final double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1 / 3. - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, accurate near 0
+    private static double helper2(final double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            final long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        return "zipf" + s;
+    }
+}